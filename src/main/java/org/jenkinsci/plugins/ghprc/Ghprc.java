@@ -45,7 +45,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -58,12 +60,21 @@ public class Ghprc {
     private static final Logger logger = Logger.getLogger(Ghprc.class.getName());
     private static final Pattern githubUserRepoPattern = Pattern.compile("^(http[s]?://[^/]*)/([^/]*)/([^/]*).*");
 
+    static final long CREDENTIALS_TTL = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_CACHED_CREDENTIALS = 500;
+    private static final ConcurrentMap<String, CachedCredentials> credentialsCache = new ConcurrentHashMap<String, CachedCredentials>();
+
     private final GhprcTrigger trigger;
     private final AbstractProject<?, ?> project;
     private GhprcRepository repository;
     private GhprcBuilds builds;
 
     public Ghprc(AbstractProject<?, ?> project, GhprcTrigger trigger, ConcurrentMap<Integer, GhprcPullRequest> pulls) {
+        this(project, trigger, pulls, new GhprcPollState());
+    }
+
+    public Ghprc(AbstractProject<?, ?> project, GhprcTrigger trigger, ConcurrentMap<Integer, GhprcPullRequest> pulls,
+            GhprcPollState pollState) {
         this.project = project;
 
         final GithubProjectProperty ghpp = project.getProperty(GithubProjectProperty.class);
@@ -80,15 +91,34 @@ public class Ghprc {
 
         this.trigger = trigger;
 
-        this.repository = new GhprcRepository(user, repo, this, pulls);
+        this.repository = new GhprcRepository(user, repo, this, pulls, pollState);
         this.builds = new GhprcBuilds(trigger, repository);
     }
 
+    /**
+     * Prepares the stored pull requests without talking to GitHub. The repository is resolved on first use,
+     * or ahead of it by the background warm-up, which also creates the web hook when hooks are used.
+     */
     public void init() {
         this.repository.init();
-        if (trigger.getUseGitHubHooks()) {
-            this.repository.createHook();
+        final boolean useHooks = trigger.getUseGitHubHooks();
+        int rate = GhprcTrigger.getDscp().getWarmUpRate();
+        if (!useHooks && rate <= 0) {
+            return;
         }
+        final GhprcRepository repo = this.repository;
+        GhprcWarmUp.schedule(new Runnable() {
+            public void run() {
+                if (repository != repo) {
+                    return; // the trigger was stopped meanwhile
+                }
+                if (useHooks) {
+                    repo.createHook();
+                } else {
+                    repo.getGitHubRepo();
+                }
+            }
+        }, rate);
     }
 
     public boolean isProjectDisabled() {
@@ -120,23 +150,12 @@ public class Ghprc {
         builds = null;
     }
 
+    /**
+     * Computes the environment of the build for this single call, use a {@link GhprcRenderContext} to expand
+     * several strings.
+     */
     public static String replaceMacros(AbstractBuild<?, ?> build, TaskListener listener, String inputString) {
-        String returnString = inputString;
-        if (build != null && inputString != null) {
-            try {
-                Map<String, String> messageEnvVars = new HashMap<String, String>();
-
-                messageEnvVars.putAll(build.getCharacteristicEnvVars());
-                messageEnvVars.putAll(build.getBuildVariables());
-                messageEnvVars.putAll(build.getEnvironment(listener));
-
-                returnString = Util.replaceMacro(inputString, messageEnvVars);
-
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Couldn't replace macros in message: ", e);
-            }
-        }
-        return returnString;
+        return new GhprcRenderContext(build, listener).replaceMacros(inputString);
     }
     
 
@@ -270,12 +289,23 @@ public class Ghprc {
         extensions.add(ext);
     }
 
+    /**
+     * Resolves credentials by id. Results are kept for {@link #CREDENTIALS_TTL} milliseconds, or until a credentials
+     * store changes, as a full provider scan is needed for every lookup.
+     */
     public static StandardCredentials lookupCredentials(Item context, String credentialId, String uri) {
         String contextName = "(Jenkins.instance)";
         if (context != null) {
             contextName = context.getFullName();
         }
-        logger.log(Level.INFO, "Looking up credentials for {0}, using context {1} for url {2}", new Object[] { credentialId, contextName, uri });
+        String key = contextName + '|' + credentialId + '|' + uri;
+        long now = System.currentTimeMillis();
+        CachedCredentials cached = credentialsCache.get(key);
+        if (cached != null && cached.expires > now) {
+            return cached.credentials;
+        }
+
+        logger.log(Level.FINE, "Looking up credentials for {0}, using context {1} for url {2}", new Object[] { credentialId, contextName, uri });
         
         List<StandardCredentials> credentials;
         
@@ -287,10 +317,33 @@ public class Ghprc {
                     URIRequirementBuilder.fromUri(uri).build());
         }
         
-        logger.log(Level.INFO, "Found {0} credentials", new Object[]{credentials.size()});
+        logger.log(Level.FINE, "Found {0} credentials", new Object[]{credentials.size()});
         
-        return (credentialId == null) ? null : CredentialsMatchers.firstOrNull(credentials,
+        StandardCredentials found = (credentialId == null) ? null : CredentialsMatchers.firstOrNull(credentials,
                     CredentialsMatchers.withId(credentialId));
+
+        if (credentialsCache.size() >= MAX_CACHED_CREDENTIALS) {
+            credentialsCache.clear();
+        }
+        credentialsCache.put(key, new CachedCredentials(found, now + CREDENTIALS_TTL));
+        return found;
+    }
+
+    /**
+     * Forgets all the resolved credentials, called when a credentials store changes.
+     */
+    public static void invalidateCredentials() {
+        credentialsCache.clear();
+    }
+
+    private static class CachedCredentials {
+        private final StandardCredentials credentials;
+        private final long expires;
+
+        private CachedCredentials(StandardCredentials credentials, long expires) {
+            this.credentials = credentials;
+            this.expires = expires;
+        }
     }
     
     public static String createCredentials(String serverAPIUrl, String token) throws Exception {
@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The head commits of the branches of one repository, as last fetched or reported by a web hook.
+ * <p>
+ * Entries expire after {@link #TTL} so a branch moved without a web hook telling us is fetched again soon.
+ * Push events report the new head reliably and replace the entry. The base sha of pull request events isn't
+ * used, it is the head of the branch when the pull request was opened or synchronized, not its current one.
+ */
+public class GhprcBranchHeads {
+    static final long TTL = TimeUnit.MINUTES.toMillis(1);
+
+    private final ConcurrentMap<String, Head> heads = new ConcurrentHashMap<String, Head>();
+
+    /**
+     * @param branch the branch name, without the refs/heads/ prefix
+     * @return the head commit of the branch, or null if not known or expired
+     */
+    public String get(String branch) {
+        return get(branch, System.currentTimeMillis());
+    }
+
+    String get(String branch, long now) {
+        Head head = heads.get(branch);
+        if (head == null) {
+            return null;
+        }
+        if (now - head.recorded > TTL) {
+            heads.remove(branch, head);
+            return null;
+        }
+        return head.sha;
+    }
+
+    /**
+     * Records the head of a branch just fetched or pushed to.
+     */
+    public void put(String branch, String sha) {
+        put(branch, sha, System.currentTimeMillis());
+    }
+
+    void put(String branch, String sha, long now) {
+        if (branch == null || sha == null) {
+            return;
+        }
+        heads.put(branch, new Head(sha, now));
+    }
+
+    /**
+     * Forgets a deleted branch.
+     */
+    public void remove(String branch) {
+        heads.remove(branch);
+    }
+
+    private static class Head {
+        private final String sha;
+        private final long recorded;
+
+        Head(String sha, long recorded) {
+            this.sha = sha;
+            this.recorded = recorded;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.console.ConsoleNote;
+import hudson.model.AbstractBuild;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads the last lines of a build log without going through the whole log, as {@link AbstractBuild#getLog(int)}
+ * does.
+ * <p>
+ * Plain logs are read backwards from their end. Compressed logs can't be, they are streamed keeping only the
+ * last lines, and given up on past {@link #GZIP_MAX_SCAN} bytes. Either way at most the given number of lines
+ * and about {@link #MAX_BYTES} bytes are returned, with console notes removed. Like in core, the first line is
+ * replaced by a marker when earlier lines were left out.
+ */
+public class GhprcBuildLogTail {
+
+    /**
+     * Largest excerpt returned, in bytes.
+     */
+    public static final int MAX_BYTES = 64 * 1024;
+
+    /**
+     * Largest uncompressed size of a compressed log read for an excerpt, in bytes.
+     */
+    static final long GZIP_MAX_SCAN = 256L * 1024 * 1024;
+
+    static final String TRUNCATED = "[...truncated...]";
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private GhprcBuildLogTail() {
+    }
+
+    /**
+     * @param build the build
+     * @param maxLines the number of lines returned at most
+     * @return the last lines of the log of the build, without console notes
+     * @throws IOException if the log can't be read
+     */
+    public static List<String> read(AbstractBuild<?, ?> build, int maxLines) throws IOException {
+        return read(build.getLogFile(), build.getCharset(), maxLines, MAX_BYTES);
+    }
+
+    static List<String> read(File log, Charset charset, int maxLines, int maxBytes) throws IOException {
+        if (maxLines < 1 || !log.isFile()) {
+            return Collections.emptyList();
+        }
+        if (log.getName().endsWith(".gz")) {
+            return readCompressed(log, charset, maxLines, maxBytes);
+        }
+        return readPlain(log, charset, maxLines, maxBytes);
+    }
+
+    private static List<String> readPlain(File log, Charset charset, int maxLines, int maxBytes) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(log, "r");
+        try {
+            long length = file.length();
+            long start = length;
+            int newlines = 0;
+            byte[] buffer = new byte[CHUNK_SIZE];
+            // go back until enough whole lines are behind us, or the byte limit is reached
+            while (start > 0 && newlines < maxLines && length - start < maxBytes) {
+                int chunk = (int) Math.min(Math.min(CHUNK_SIZE, start), maxBytes - (length - start));
+                start -= chunk;
+                file.seek(start);
+                file.readFully(buffer, 0, chunk);
+                for (int i = chunk - 1; i >= 0; i--) {
+                    // the newline ending the log doesn't start a line
+                    if (buffer[i] == '\n' && start + i != length - 1) {
+                        newlines++;
+                    }
+                }
+            }
+
+            byte[] tail = new byte[(int) (length - start)];
+            file.seek(start);
+            file.readFully(tail);
+
+            List<String> lines = new LinkedList<String>(Arrays.asList(new String(tail, charset).split("\r?\n", -1)));
+            if (lines.get(lines.size() - 1).isEmpty()) {
+                lines.remove(lines.size() - 1);
+            }
+            if (start > 0 && lines.size() > 1) {
+                // starts in the middle of a line, maybe of a console note
+                lines.remove(0);
+            }
+            return excerpt(lines, start > 0, maxLines);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static List<String> readCompressed(File log, Charset charset, int maxLines, int maxBytes) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(log)), charset));
+        try {
+            LinkedList<String> lines = new LinkedList<String>();
+            boolean truncated = false;
+            long scanned = 0;
+            long kept = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                scanned += line.length() + 1;
+                if (scanned > GZIP_MAX_SCAN) {
+                    return Collections.singletonList("[...compressed log too large for an excerpt...]");
+                }
+                lines.add(line);
+                kept += line.length() + 1;
+                while (lines.size() > maxLines || lines.size() > 1 && kept > maxBytes) {
+                    kept -= lines.removeFirst().length() + 1;
+                    truncated = true;
+                }
+            }
+            return excerpt(lines, truncated, maxLines);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    private static List<String> excerpt(List<String> lines, boolean truncated, int maxLines) {
+        if (lines.size() > maxLines) {
+            lines = lines.subList(lines.size() - maxLines, lines.size());
+            truncated = true;
+        }
+        List<String> excerpt = new ArrayList<String>(lines.size());
+        for (String line : lines) {
+            excerpt.add(ConsoleNote.removeNotes(line));
+        }
+        if (truncated && !excerpt.isEmpty()) {
+            excerpt.set(0, TRUNCATED);
+        }
+        return excerpt;
+    }
+}
@@ -1,13 +1,12 @@
 package org.jenkinsci.plugins.ghprc;
 
 import com.google.common.base.Strings;
+import hudson.FilePath;
 import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.TaskListener;
 import hudson.model.queue.QueueTaskFuture;
 import hudson.plugins.git.util.BuildData;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatus;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
@@ -16,12 +15,13 @@ import org.kohsuke.github.GHCommitState;
 import org.kohsuke.github.GHIssueState;
 import org.kohsuke.github.GHPullRequest;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +30,7 @@ import java.util.logging.Logger;
  */
 public class GhprcBuilds {
     private static final Logger logger = Logger.getLogger(GhprcBuilds.class.getName());
+    private static final long MERGEABLE_TIMEOUT = 60;
     private final GhprcTrigger trigger;
     private final GhprcRepository repo;
 
@@ -38,7 +39,12 @@ public class GhprcBuilds {
         this.repo = repo;
     }
 
-    public void build(GhprcPullRequest pr) {
+    /**
+     * Queues a build of the pull request.
+     *
+     * @return true if the build was queued
+     */
+    public boolean build(GhprcPullRequest pr) {
 
         GhprcCause cause = new GhprcCause(pr.getHead(), pr.getId(), pr.isMergeable(), pr.getTarget(), pr.getSource(), pr.getAuthorEmail(),
                 pr.getTitle(), pr.getUrl(), pr.getCommitAuthor());
@@ -55,7 +61,9 @@ public class GhprcBuilds {
         QueueTaskFuture<?> build = trigger.startJob(cause, repo);
         if (build == null) {
             logger.log(Level.SEVERE, "Job did not start");
+            return false;
         }
+        return true;
     }
 
 
@@ -73,20 +81,19 @@ public class GhprcBuilds {
         GHPullRequest pr = pulls.get(c.getPullID()).getPullRequest();
 
         try {
-            int counter = 0;
-            // If the PR is being resolved by GitHub then getMergeable will return null
-            Boolean isMergeable = pr.getMergeable();
             Boolean isMerged = pr.isMerged();
             // Not sure if isMerged can return null, but adding if just in case
             if (isMerged == null) {
                 isMerged = false;
             }
-            while (isMergeable == null && !isMerged && counter++ < 60) {
-                Thread.sleep(1000);
-                isMergeable = pr.getMergeable();
-                isMerged = pr.isMerged();
-                if (isMerged == null) {
-                    isMerged = false;
+            // If the PR is being resolved by GitHub then getMergeable will return null
+            Boolean isMergeable = null;
+            if (!isMerged) {
+                try {
+                    isMergeable = GhprcMergeabilityResolver.resolve(repo, c.getPullID(), pr.getMergeable())
+                            .get(MERGEABLE_TIMEOUT, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    // GitHub hasn't settled yet, reported below
                 }
             }
             
@@ -108,10 +115,12 @@ public class GhprcBuilds {
             e.printStackTrace(logger);
         }
 
+        // the environment of the build is computed once for everything rendered when it starts
+        GhprcRenderContext context = new GhprcRenderContext(build, listener);
         for (GhprcExtension ext : Ghprc.getJobExtensions(trigger, GhprcCommitStatus.class)) {
             if (ext instanceof GhprcCommitStatus) {
                 try {
-                    ((GhprcCommitStatus) ext).onBuildStart(build, listener, repo.getGitHubRepo());
+                    context.onBuildStart((GhprcCommitStatus) ext, repo.getGitHubRepo());
                 } catch (GhprcCommitStatusException e) {
                     repo.commentOnFailure(build, listener, e);
                 }
@@ -125,7 +134,7 @@ public class GhprcBuilds {
             }
             Map<String, String> vars = getVariables(c);
             template = Util.replaceMacro(template, vars);
-            template = Ghprc.replaceMacros(build, listener, template);
+            template = context.replaceMacros(template);
             build.setDescription(template);
         } catch (IOException ex) {
             logger.print("Can't update build description");
@@ -162,10 +171,21 @@ public class GhprcBuilds {
             build.getActions().remove(fakeOne);
         }
 
+        // remember the build so that the next one of this pull request can find its BuildData directly
+        String projectName = build.getProject().getFullName();
+        GhprcPullRequest pull = trigger.getDescriptor().getPullRequests(projectName).get(c.getPullID());
+        // an older build finishing late doesn't replace a newer one
+        if (pull != null && build.getNumber() > pull.getLastBuildNumber()) {
+            pull.setLastBuildNumber(build.getNumber());
+            trigger.getDescriptor().savePullRequests(projectName);
+        }
+
+        // and once again for everything rendered when it completes
+        GhprcRenderContext context = new GhprcRenderContext(build, listener);
         for (GhprcExtension ext : Ghprc.getJobExtensions(trigger, GhprcCommitStatus.class)) {
             if (ext instanceof GhprcCommitStatus) {
                 try {
-                    ((GhprcCommitStatus) ext).onBuildComplete(build, listener, repo.getGitHubRepo());
+                    context.onBuildComplete((GhprcCommitStatus) ext, repo.getGitHubRepo());
                 } catch (GhprcCommitStatusException e) {
                     repo.commentOnFailure(build, listener, e);
                 }
@@ -175,7 +195,7 @@ public class GhprcBuilds {
         GHCommitState state;
         state = Ghprc.getState(build);
 
-        commentOnBuildResult(build, listener, c);
+        commentOnBuildResult(context, c);
         // close failed pull request automatically
         if (state == GHCommitState.FAILURE && trigger.isAutoCloseFailedPullRequests()) {
             closeFailedRequest(listener, c);
@@ -195,31 +215,43 @@ public class GhprcBuilds {
         }
     }
 
-    private void commentOnBuildResult(AbstractBuild<?, ?> build, TaskListener listener, GhprcCause c) {
-        String outputFilename = getWorkspace(build) + getOutputFilename(build, listener);
-        File outputFile = new File(outputFilename);
+    private void commentOnBuildResult(GhprcRenderContext context, GhprcCause c) {
+        AbstractBuild<?, ?> build = context.getBuild();
+        GhprcTrigger.DescriptorImpl descriptor = trigger.getDescriptor();
+        String outputFilename = context.replaceMacros(descriptor.getOutputFile());
+        FilePath workspace = build.getWorkspace();
+        if (workspace == null) {
+            logger.log(Level.WARNING, "No workspace left for {0}, not reading the output file {1}", new Object[] { build, outputFilename });
+            return;
+        }
 
-        String msg;
+        GhprcOutputFile.Content content;
         try {
-            msg = FileUtils.readFileToString(outputFile);
+            content = GhprcOutputFile.read(workspace.child(outputFilename), descriptor.getOutputFileMaxSize(),
+                    descriptor.getCommentDigest());
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Unable to read comment from output file at " + outputFilename);
             return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
         }
 
-        String md5 = DigestUtils.md5Hex(msg);
-
-        if (!Strings.isNullOrEmpty(msg)) {
-            repo.addOrUpdateComment(c.getPullID(), msg, md5, build, listener);
+        String msg = content.getText();
+        if (Strings.isNullOrEmpty(msg)) {
+            return;
         }
-    }
-
-    private String getOutputFilename(AbstractBuild<?, ?> build, TaskListener listener) {
-        return Ghprc.replaceMacros(build, listener, trigger.getDescriptor().getOutputFile());
-    }
+        if (content.isTruncated()) {
+            msg += "\n\n(output truncated to " + descriptor.getOutputFileMaxSize() / 1024 + " KB)";
+        }
+        String digest = content.getDigest();
 
-    private String getWorkspace(AbstractBuild<?, ?> build) {
-        return build.getWorkspace().getRemote() + File.separator;
+        GhprcPullRequest pull = descriptor.getPullRequests(build.getProject().getFullName()).get(c.getPullID());
+        if (pull != null && digest.equals(pull.getLastCommentDigest())) {
+            logger.log(Level.FINE, "Result comment of pull request #{0} has not changed, not posting it", c.getPullID());
+            return;
+        }
+        repo.addOrUpdateComment(c.getPullID(), msg, digest, context);
     }
 
 }
@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
+
+/**
+ * Runs the per pull request work of a poll, a limited number of pull requests at a time.
+ * <p>
+ * The threads are shared by every repository. The polling thread always takes part in the work itself, so
+ * a poll makes progress even when all the shared threads are busy with other repositories.
+ */
+public class GhprcCheckExecutor {
+    private static final Logger logger = Logger.getLogger(GhprcCheckExecutor.class.getName());
+
+    static final int THREADS = 16;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new GhprcThreadFactory("pull request check"));
+
+    private GhprcCheckExecutor() {}
+
+    /**
+     * Runs the checks and waits for them to finish. Once a check fails, the checks not started yet are skipped.
+     *
+     * @param checks the checks, returning false when they failed
+     * @param concurrency the most checks run at the same time
+     * @return true if every check succeeded
+     */
+    public static boolean runAll(List<? extends Callable<Boolean>> checks, int concurrency) {
+        final Queue<Callable<Boolean>> queue = new ConcurrentLinkedQueue<Callable<Boolean>>(checks);
+        final AtomicBoolean success = new AtomicBoolean(true);
+        final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+
+        Runnable worker = new Runnable() {
+            public void run() {
+                Authentication old = SecurityContextHolder.getContext().getAuthentication();
+                SecurityContextHolder.getContext().setAuthentication(auth);
+                try {
+                    Callable<Boolean> check;
+                    while (success.get() && (check = queue.poll()) != null) {
+                        try {
+                            if (!check.call()) {
+                                success.set(false);
+                            }
+                        } catch (Exception e) {
+                            logger.log(Level.SEVERE, "Unable to check pull request", e);
+                            success.set(false);
+                        }
+                    }
+                } finally {
+                    SecurityContextHolder.getContext().setAuthentication(old);
+                    HttpConnectorWithJenkinsProxy.settle();
+                }
+            }
+        };
+
+        int helpers = Math.min(concurrency, checks.size()) - 1;
+        List<Future<?>> futures = new ArrayList<Future<?>>(Math.max(helpers, 0));
+        for (int i = 0; i < helpers; i++) {
+            futures.add(executor.submit(worker));
+        }
+        worker.run();
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                success.set(false);
+                break;
+            } catch (ExecutionException e) {
+                logger.log(Level.SEVERE, "Unable to check pull request", e.getCause());
+                success.set(false);
+            }
+        }
+        return success.get();
+    }
+}
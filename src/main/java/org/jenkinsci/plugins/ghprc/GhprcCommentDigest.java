@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.nio.charset.Charset;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Digests identifying the content of build result comments, so that a comment isn't posted again when the
+ * output of a build didn't change. The digest is signed into the comment as <code>&lt;label&gt; hash: &lt;hex&gt;</code>.
+ */
+public enum GhprcCommentDigest {
+    MD5("md5", "MD5", Hashing.md5()),
+    SHA256("sha256", "SHA-256", Hashing.sha256()),
+    MURMUR3("murmur3", "Murmur3 (fastest, not cryptographic)", Hashing.murmur3_128());
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String label;
+    private final String displayName;
+    private final HashFunction function;
+
+    private GhprcCommentDigest(String label, String displayName, HashFunction function) {
+        this.label = label;
+        this.displayName = displayName;
+        this.function = function;
+    }
+
+    /**
+     * @return the hex digest of the comment
+     */
+    public String digest(String comment) {
+        return function.hashString(comment, UTF8).toString();
+    }
+
+    /**
+     * @return a hasher for content streamed in bytes, giving the same digest as {@link #digest(String)} for
+     *         UTF-8 text
+     */
+    public Hasher newHasher() {
+        return function.newHasher();
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,237 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
+import org.kohsuke.github.GHCommitState;
+import org.kohsuke.github.GHRepository;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Posts commit statuses in the background, so slow GitHub responses don't hold up builds and web hooks.
+ * <p>
+ * Statuses are queued per repository, commit and context. A status queued before the previous one of the
+ * same key was sent replaces it, so only the latest state is posted. A status equal to the last one GitHub
+ * accepted for its key is not posted again. Failed posts are retried with a growing delay, and reported to the
+ * {@link FailureListener} of the status once every retry failed.
+ */
+public class GhprcCommitStatusPublisher {
+    private static final Logger logger = Logger.getLogger(GhprcCommitStatusPublisher.class.getName());
+
+    /**
+     * Delays in seconds before each retry of a failed post.
+     */
+    static final long[] RETRY_DELAYS = { 1, 2, 4, 8, 16, 30 };
+    private static final int MAX_ACKNOWLEDGED = 1000;
+
+    private static final GhprcCommitStatusPublisher INSTANCE = new GhprcCommitStatusPublisher(
+            Executors.newScheduledThreadPool(2, new GhprcThreadFactory("commit status")));
+    private static volatile GhprcCommitStatusPublisher override;
+
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, Status> pending = new ConcurrentHashMap<String, Status>();
+    private final Map<String, Status> acknowledged = Collections.synchronizedMap(new LinkedHashMap<String, Status>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Status> eldest) {
+            return size() > MAX_ACKNOWLEDGED;
+        }
+    });
+
+    @VisibleForTesting
+    GhprcCommitStatusPublisher(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public static GhprcCommitStatusPublisher get() {
+        GhprcCommitStatusPublisher publisher = override;
+        return publisher == null ? INSTANCE : publisher;
+    }
+
+    /**
+     * Replaces the shared publisher, null restores the background one.
+     */
+    @VisibleForTesting
+    static void setInstance(GhprcCommitStatusPublisher publisher) {
+        override = publisher;
+    }
+
+    /**
+     * Posts the queued statuses on the calling thread.
+     */
+    @VisibleForTesting
+    void flush() {
+        flush(0);
+    }
+
+    /**
+     * Posts the queued statuses on the calling thread as the given attempt, {@link #RETRY_DELAYS}.length for
+     * the last one.
+     */
+    @VisibleForTesting
+    void flush(int attempt) {
+        for (String key : new ArrayList<String>(pending.keySet())) {
+            send(key, attempt);
+        }
+    }
+
+    /**
+     * Queues a commit status to be posted.
+     *
+     * @param repo the repository of the commit
+     * @param rateLimit the rate limit of the connection to GitHub, may be null
+     * @param sha the commit
+     * @param state the state
+     * @param url the target URL, may be null
+     * @param message the description
+     * @param context the context, may be null for the default one
+     */
+    public void publish(GHRepository repo, GhprcRateLimitScheduler rateLimit, String sha, GHCommitState state, String url,
+            String message, String context) {
+        publish(repo, rateLimit, sha, state, url, message, context, 0, null);
+    }
+
+    /**
+     * Queues a commit status to be posted, reporting it to a listener if it can't be.
+     *
+     * @param pullId the pull request the status is set for
+     * @param failureListener told when the status couldn't be posted after every retry, may be null
+     * @see #publish(GHRepository, GhprcRateLimitScheduler, String, GHCommitState, String, String, String)
+     */
+    public void publish(GHRepository repo, GhprcRateLimitScheduler rateLimit, String sha, GHCommitState state, String url,
+            String message, String context, int pullId, FailureListener failureListener) {
+        String key = key(repo, sha, context);
+        Status status = new Status(repo, rateLimit, sha, state, url, message, context, pullId, failureListener);
+        if (status.equals(acknowledged.get(key))) {
+            logger.log(Level.FINE, "Commit status {0} of {1} already set, not posting it again", new Object[] { state, key });
+            return;
+        }
+        if (pending.put(key, status) == null) {
+            schedule(key, 0, 0);
+        } else {
+            logger.log(Level.FINE, "Commit status of {0} superseded by {1} before it was posted", new Object[] { key, state });
+        }
+    }
+
+    static String key(GHRepository repo, String sha, String context) {
+        return repo.getFullName() + '@' + sha + '#' + ObjectUtils.toString(context);
+    }
+
+    private void schedule(final String key, final int attempt, long delay) {
+        executor.schedule(new Runnable() {
+            public void run() {
+                send(key, attempt);
+            }
+        }, delay, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Posts the latest status queued for the key.
+     */
+    @VisibleForTesting
+    void send(final String key, int attempt) {
+        Status status = pending.get(key);
+        if (status == null) {
+            return;
+        }
+        if (status.equals(acknowledged.get(key))) {
+            done(key, status);
+            return;
+        }
+        if (status.rateLimit != null && !status.rateLimit.tryAcquire(GhprcRateLimitScheduler.Priority.HIGH)) {
+            status.rateLimit.runAfterReset(new Runnable() {
+                public void run() {
+                    send(key, 0);
+                }
+            });
+            return;
+        }
+        try {
+            status.repo.createCommitStatus(status.sha, status.state, status.url, status.message, status.context);
+            acknowledged.put(key, status);
+            done(key, status);
+        } catch (IOException e) {
+            if (attempt < RETRY_DELAYS.length) {
+                logger.log(Level.FINE, "Couldn't set commit status of " + key + ", retrying", e);
+                schedule(key, attempt + 1, RETRY_DELAYS[attempt]);
+            } else {
+                logger.log(Level.SEVERE, "Couldn't set commit status of " + key + " to " + status.state
+                        + ". FileNotFoundException means that the credentials Jenkins is using is probably wrong,"
+                        + " or the user account does not have write access to the repo.", e);
+                done(key, status);
+                if (status.failureListener != null) {
+                    status.failureListener.onFailure(new GhprcCommitStatusException(e, status.state, status.message, status.pullId));
+                }
+            }
+        } finally {
+            HttpConnectorWithJenkinsProxy.settle();
+        }
+    }
+
+    private void done(String key, Status status) {
+        if (!pending.remove(key, status)) {
+            // a newer status was queued while this one was being sent
+            schedule(key, 0, 0);
+        }
+    }
+
+    /**
+     * Told about a commit status that couldn't be posted, on the thread of the publisher.
+     */
+    public interface FailureListener {
+        void onFailure(GhprcCommitStatusException e);
+    }
+
+    private static class Status {
+        private final GHRepository repo;
+        private final GhprcRateLimitScheduler rateLimit;
+        private final String sha;
+        private final GHCommitState state;
+        private final String url;
+        private final String message;
+        private final String context;
+        private final int pullId;
+        private final FailureListener failureListener;
+
+        Status(GHRepository repo, GhprcRateLimitScheduler rateLimit, String sha, GHCommitState state, String url, String message,
+                String context, int pullId, FailureListener failureListener) {
+            this.repo = repo;
+            this.rateLimit = rateLimit;
+            this.sha = sha;
+            this.state = state;
+            this.url = url;
+            this.message = message;
+            this.context = context;
+            this.pullId = pullId;
+            this.failureListener = failureListener;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Status)) {
+                return false;
+            }
+            Status o = (Status) obj;
+            return state == o.state && ObjectUtils.equals(url, o.url) && ObjectUtils.equals(message, o.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return ObjectUtils.hashCode(state) * 31 + ObjectUtils.hashCode(message);
+        }
+    }
+}
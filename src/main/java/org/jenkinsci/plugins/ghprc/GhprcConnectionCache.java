@@ -0,0 +1,161 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.github.GitHub;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps the {@link GitHub} connections built by {@link GhprcGitHubAuth} so that a trigger cycle reuses one
+ * connection instead of looking up the credentials and building a new client for every call.
+ * <p>
+ * Connections are keyed by the auth id, its endpoint and credentials id. The item they were built for is only
+ * part of the key when the credentials resolve differently for it than globally, for instance when a folder
+ * defines credentials with the same id, so jobs sharing global credentials share one connection. The cache is
+ * bounded and least recently used connections are dropped first. Everything is dropped when
+ * the global configuration or a credentials store is saved, so changed credentials are picked up right away.
+ */
+public class GhprcConnectionCache {
+    private static final Logger logger = Logger.getLogger(GhprcConnectionCache.class.getName());
+
+    static final int MAX_SIZE = 100;
+
+    // login of the account behind each cached connection, guarded by connections
+    private static final Map<String, String> botLogins = new HashMap<String, String>();
+
+    private static final Map<String, GitHub> connections = new LinkedHashMap<String, GitHub>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GitHub> eldest) {
+            if (size() <= MAX_SIZE) {
+                return false;
+            }
+            botLogins.remove(eldest.getKey());
+            return true;
+        }
+    };
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private GhprcConnectionCache() {}
+
+    static String key(GhprcGitHubAuth auth, Item context) {
+        return key(auth, context, context != null && resolvesPerItem(auth, context));
+    }
+
+    @VisibleForTesting
+    static String key(GhprcGitHubAuth auth, Item context, boolean perItem) {
+        String key = auth.getId() + '|' + auth.getServerAPIUrl() + '|' + auth.getCredentialsId();
+        return perItem ? key + '|' + context.getFullName() : key;
+    }
+
+    /**
+     * @return true if the credentials of the auth found from the item aren't the global ones, lookups are
+     *         memoized by {@link Ghprc#lookupCredentials(Item, String, String)}
+     */
+    private static boolean resolvesPerItem(GhprcGitHubAuth auth, Item context) {
+        String credentialsId = auth.getCredentialsId();
+        if (StringUtils.isEmpty(credentialsId)) {
+            return false;
+        }
+        StandardCredentials global = Ghprc.lookupCredentials(null, credentialsId, auth.getServerAPIUrl());
+        return Ghprc.lookupCredentials(context, credentialsId, auth.getServerAPIUrl()) != global;
+    }
+
+    static GitHub get(String key) {
+        GitHub gh;
+        synchronized (connections) {
+            gh = connections.get(key);
+        }
+        if (gh == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return gh;
+    }
+
+    static void put(String key, GitHub gh) {
+        synchronized (connections) {
+            connections.put(key, gh);
+        }
+    }
+
+    /**
+     * Drops every cached connection, they are rebuilt on next use.
+     */
+    public static void invalidateAll() {
+        synchronized (connections) {
+            botLogins.clear();
+            if (connections.isEmpty()) {
+                return;
+            }
+            connections.clear();
+        }
+        logger.log(Level.FINE, "Dropped cached GitHub connections");
+    }
+
+    @VisibleForTesting
+    static int size() {
+        synchronized (connections) {
+            return connections.size();
+        }
+    }
+
+    static String getBotLogin(String key) {
+        synchronized (connections) {
+            return botLogins.get(key);
+        }
+    }
+
+    static void putBotLogin(String key, String login) {
+        synchronized (connections) {
+            // kept only as long as its connection, it is looked up again otherwise
+            if (connections.containsKey(key)) {
+                botLogins.put(key, login);
+            }
+        }
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Drops the resolved credentials and cached connections when credentials may have changed. Folders keep
+     * their credentials stores in their own configuration, so saving any item group counts as a change.
+     */
+    @Extension
+    public static class GhprcCredentialsSaveableListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider || o instanceof ItemGroup) {
+                Ghprc.invalidateCredentials();
+                invalidateAll();
+            }
+        }
+    }
+}
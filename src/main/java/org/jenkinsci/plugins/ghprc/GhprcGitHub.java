@@ -22,6 +22,21 @@ public class GhprcGitHub {
     public GitHub get() throws IOException {
         return trigger.getGitHub();
     }
+
+    /**
+     * @return the rate limit scheduler of the trigger's GitHub auth, or null if there is no auth
+     */
+    public GhprcRateLimitScheduler getRateLimitScheduler() {
+        return GhprcRateLimitScheduler.get(trigger.getGitHubApiAuth());
+    }
+
+    /**
+     * @return a client for raw API calls with the trigger's credentials, or null if there is none
+     */
+    public GhprcRestClient getRestClient() {
+        GhprcGitHubAuth auth = trigger.getGitHubApiAuth();
+        return auth == null ? null : auth.getRestClient(trigger.getActualProject());
+    }
     
     public boolean isUserMemberOfOrganization(String organisation, GHUser member) {
         boolean orgHasMember = false;
@@ -38,9 +53,22 @@ public class GhprcGitHub {
         return orgHasMember;
     }
 
+    /**
+     * @return the login of the account the trigger connects as, looked up once per connection
+     */
     public String getBotUserLogin() {
+        GhprcGitHubAuth auth = trigger.getGitHubApiAuth();
+        String key = auth == null ? null : GhprcConnectionCache.key(auth, trigger.getActualProject());
+        String login = key == null ? null : GhprcConnectionCache.getBotLogin(key);
+        if (login != null) {
+            return login;
+        }
         try {
-            return get().getMyself().getLogin();
+            login = get().getMyself().getLogin();
+            if (key != null && login != null) {
+                GhprcConnectionCache.putBotLogin(key, login);
+            }
+            return login;
         } catch (IOException ex) {
             logger.log(Level.SEVERE, null, ex);
             return null;
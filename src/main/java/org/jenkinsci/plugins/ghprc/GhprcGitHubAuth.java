@@ -5,6 +5,7 @@ import static hudson.Util.fixEmptyAndTrim;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,6 +33,7 @@ import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
 import com.google.common.base.Joiner;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 
@@ -45,6 +47,7 @@ import hudson.util.ListBoxModel;
 
 public class GhprcGitHubAuth extends AbstractDescribableImpl<GhprcGitHubAuth> {
     private static final Logger logger = Logger.getLogger(GhprcGitHubAuth.class.getName());
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
@@ -106,7 +109,7 @@ public class GhprcGitHubAuth extends AbstractDescribableImpl<GhprcGitHubAuth> {
     private static GitHubBuilder getBuilder(Item context, String serverAPIUrl, String credentialsId) {
         GitHubBuilder builder = new GitHubBuilder()
             .withEndpoint(serverAPIUrl)
-            .withConnector(new HttpConnectorWithJenkinsProxy());
+            .withConnector(new HttpConnectorWithJenkinsProxy(GhprcRateLimitScheduler.get(serverAPIUrl, credentialsId)));
         String contextName = context == null ? "(Jenkins.instance)" : context.getFullDisplayName();
         
         if (StringUtils.isEmpty(credentialsId)) {
@@ -135,7 +138,11 @@ public class GhprcGitHubAuth extends AbstractDescribableImpl<GhprcGitHubAuth> {
     }
 
     public GitHub getConnection(Item context) throws IOException {
-        GitHub gh = null;
+        String key = GhprcConnectionCache.key(this, context);
+        GitHub gh = GhprcConnectionCache.get(key);
+        if (gh != null) {
+            return gh;
+        }
         GitHubBuilder builder = getBuilder(context, serverAPIUrl, credentialsId);
         if (builder == null) {
           logger.log(Level.SEVERE, "Unable to get builder using credentials: {0}", credentialsId);
@@ -143,6 +150,7 @@ public class GhprcGitHubAuth extends AbstractDescribableImpl<GhprcGitHubAuth> {
         }
         try {
             gh = builder.build();
+            GhprcConnectionCache.put(key, gh);
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Unable to connect using credentials: " + credentialsId, e);
         }
@@ -150,6 +158,31 @@ public class GhprcGitHubAuth extends AbstractDescribableImpl<GhprcGitHubAuth> {
         return gh;
     }
 
+    /**
+     * Returns a client for the raw API calls github-api can't make, authenticated like {@link #getConnection(Item)}.
+     *
+     * @param context the item whose credentials are used
+     * @return the client, or null if the credentials can't be used
+     */
+    public GhprcRestClient getRestClient(Item context) {
+        GhprcRateLimitScheduler rateLimit = GhprcRateLimitScheduler.get(this);
+        if (StringUtils.isEmpty(credentialsId)) {
+            return new GhprcRestClient(serverAPIUrl, null, rateLimit);
+        }
+        StandardCredentials credentials = Ghprc.lookupCredentials(context, credentialsId, serverAPIUrl);
+        String authorization;
+        if (credentials instanceof StandardUsernamePasswordCredentials) {
+            StandardUsernamePasswordCredentials upCredentials = (StandardUsernamePasswordCredentials) credentials;
+            String userPass = upCredentials.getUsername() + ":" + upCredentials.getPassword().getPlainText();
+            authorization = "Basic " + new String(Base64.encodeBase64(userPass.getBytes(UTF8)), UTF8);
+        } else if (credentials instanceof StringCredentials) {
+            authorization = "token " + ((StringCredentials) credentials).getSecret().getPlainText();
+        } else {
+            return null;
+        }
+        return new GhprcRestClient(serverAPIUrl, authorization, rateLimit);
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return DESCRIPTOR;
@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.security.ACL;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Finds out whether pull requests can be merged without blocking the caller.
+ * <p>
+ * GitHub computes mergeability in the background and answers null until it is done. Pull requests in that
+ * state are polled again on a small scheduled pool with a growing delay, and the returned future completes
+ * as soon as GitHub has an answer, or with null once it gives up. Concurrent requests for the same pull
+ * request share one future.
+ */
+public class GhprcMergeabilityResolver {
+    private static final Logger logger = Logger.getLogger(GhprcMergeabilityResolver.class.getName());
+
+    /**
+     * Delays in seconds before each new poll, about a minute in total.
+     */
+    static final long[] POLL_DELAYS = { 1, 2, 4, 8, 16, 30 };
+
+    private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, new GhprcThreadFactory("mergeability"));
+    private static final ConcurrentMap<String, SettableFuture<Boolean>> pending = new ConcurrentHashMap<String, SettableFuture<Boolean>>();
+
+    private GhprcMergeabilityResolver() {}
+
+    /**
+     * Resolves the mergeability of a pull request. Listeners of the future are called on a pool thread, as
+     * the system user, unless the answer is already known.
+     *
+     * @param repo the repository of the pull request
+     * @param id the pull request number
+     * @param mergeable the mergeability last reported by GitHub, null if not computed yet
+     * @return the mergeability, or null if GitHub didn't compute it in time
+     */
+    public static ListenableFuture<Boolean> resolve(GhprcRepository repo, int id, Boolean mergeable) {
+        if (mergeable != null) {
+            return Futures.immediateFuture(mergeable);
+        }
+        String key = repo.getName() + '#' + id;
+        SettableFuture<Boolean> future = pending.get(key);
+        if (future != null) {
+            return future;
+        }
+        SettableFuture<Boolean> created = SettableFuture.create();
+        future = pending.putIfAbsent(key, created);
+        if (future != null) {
+            return future;
+        }
+        logger.log(Level.FINE, "Mergeability of pull request #{0} on {1} not known yet", new Object[] { id, repo.getName() });
+        poll(repo, id, key, created, 0);
+        return created;
+    }
+
+    private static void poll(final GhprcRepository repo, final int id, final String key, final SettableFuture<Boolean> future, final int attempt) {
+        executor.schedule(new Runnable() {
+            public void run() {
+                Boolean mergeable = null;
+                try {
+                    mergeable = repo.getPullRequest(id).getMergeable();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Couldn't obtain mergeable status of pull request #" + id, e);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Couldn't obtain mergeable status of pull request #" + id, e);
+                }
+                if (mergeable == null && attempt + 1 < POLL_DELAYS.length) {
+                    poll(repo, id, key, future, attempt + 1);
+                    return;
+                }
+                if (mergeable == null) {
+                    logger.log(Level.INFO, "GitHub didn''t compute the mergeability of pull request #{0} on {1} in time",
+                            new Object[] { id, repo.getName() });
+                }
+                pending.remove(key, future);
+                complete(future, mergeable);
+            }
+        }, POLL_DELAYS[attempt], TimeUnit.SECONDS);
+    }
+
+    private static void complete(SettableFuture<Boolean> future, Boolean mergeable) {
+        Authentication old = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+        try {
+            future.set(mergeable);
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(old);
+        }
+    }
+}
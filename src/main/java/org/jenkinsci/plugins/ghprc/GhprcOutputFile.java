@@ -0,0 +1,142 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.hash.Hasher;
+
+/**
+ * Reads a file of the workspace where it is, on the agent running the build, so that only the part posted
+ * to GitHub crosses the channel.
+ * <p>
+ * At most {@link #maxBytes} bytes are kept, cut back to a whole UTF-8 character, the rest is only streamed
+ * through the digest, if one is asked for. The digest covers the whole file, so a change past the kept part
+ * still counts as a change.
+ */
+public class GhprcOutputFile implements FilePath.FileCallable<GhprcOutputFile.Content> {
+    private static final long serialVersionUID = 1L;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int maxBytes;
+    private final GhprcCommentDigest digest;
+
+    /**
+     * @param maxBytes the number of bytes kept at most
+     * @param digest the digest computed over the file, null for none
+     */
+    public GhprcOutputFile(int maxBytes, GhprcCommentDigest digest) {
+        this.maxBytes = maxBytes;
+        this.digest = digest;
+    }
+
+    /**
+     * Reads a file of the workspace.
+     *
+     * @param file the file, usually a child of the workspace
+     * @param maxBytes the number of bytes kept at most
+     * @param digest the digest computed over the file, null for none
+     * @return the kept part of the file and its digest
+     * @throws FileNotFoundException if the file doesn't exist
+     * @throws IOException if it can't be read
+     * @throws InterruptedException if the build was interrupted meanwhile
+     */
+    public static Content read(FilePath file, int maxBytes, GhprcCommentDigest digest) throws IOException, InterruptedException {
+        return file.act(new GhprcOutputFile(maxBytes, digest));
+    }
+
+    public Content invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+        if (!f.isFile()) {
+            throw new FileNotFoundException(f.getPath());
+        }
+        Hasher hasher = digest == null ? null : digest.newHasher();
+        byte[] kept = new byte[(int) Math.min(maxBytes, f.length())];
+        int keptLength = 0;
+        long size = 0;
+
+        InputStream is = new FileInputStream(f);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                if (keptLength < kept.length) {
+                    int copied = Math.min(read, kept.length - keptLength);
+                    System.arraycopy(buffer, 0, kept, keptLength, copied);
+                    keptLength += copied;
+                }
+                size += read;
+                if (hasher != null) {
+                    hasher.putBytes(buffer, 0, read);
+                } else if (size > maxBytes) {
+                    // nothing more to keep and nothing to digest
+                    break;
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        boolean truncated = size > keptLength;
+        if (truncated) {
+            keptLength = toCharBoundary(kept, keptLength);
+        }
+        return new Content(new String(kept, 0, keptLength, "UTF-8"), truncated, hasher == null ? null : hasher.hash().toString());
+    }
+
+    /**
+     * @return the length moved back to the start of the UTF-8 character it cuts, so the kept part doesn't
+     *         end in half a character
+     */
+    static int toCharBoundary(byte[] bytes, int length) {
+        if (length == 0) {
+            return length;
+        }
+        int start = length - 1;
+        // continuation bytes are 10xxxxxx, at most three follow the lead byte
+        while (start > 0 && length - start < 4 && (bytes[start] & 0xC0) == 0x80) {
+            start--;
+        }
+        int lead = bytes[start] & 0xFF;
+        int charLength = lead < 0x80 ? 1 : lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        return start + charLength > length ? start : length;
+    }
+
+    public static class Content implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+        private final boolean truncated;
+        private final String digest;
+
+        Content(String text, boolean truncated, String digest) {
+            this.text = text;
+            this.truncated = truncated;
+            this.digest = digest;
+        }
+
+        /**
+         * @return the content of the file, cut at the byte limit
+         */
+        public String getText() {
+            return text;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * @return the digest of the whole file, null if none was asked for
+         */
+        public String getDigest() {
+            return digest;
+        }
+    }
+}
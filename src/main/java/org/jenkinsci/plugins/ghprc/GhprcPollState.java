@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.util.Date;
+
+/**
+ * What a job remembers between two polls of its repository: the validators GitHub returned for the last
+ * completely checked listing of its pull requests, and the update date of the most recently updated one.
+ * <p>
+ * It is kept by {@link GhprcPullRequestStore} next to the pull requests of the job, so that a restart
+ * doesn't cost a full listing of the open pull requests.
+ */
+public class GhprcPollState {
+    private String repository;
+    private String etag;
+    private String lastModified;
+    private Date highWaterMark;
+
+    private transient boolean dirty;
+
+    /**
+     * Forgets the state left by the polls of another repository, as after the GitHub project of the job changed.
+     *
+     * @param repository the {@code owner/name} of the repository polled from now on
+     */
+    public synchronized void useFor(String repository) {
+        if (!repository.equals(this.repository)) {
+            this.repository = repository;
+            etag = null;
+            lastModified = null;
+            highWaterMark = null;
+        }
+    }
+
+    public synchronized String getEtag() {
+        return etag;
+    }
+
+    public synchronized String getLastModified() {
+        return lastModified;
+    }
+
+    public synchronized Date getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Records the outcome of a poll whose every pull request was checked.
+     *
+     * @param etag the ETag of the listing, or null
+     * @param lastModified the Last-Modified date of the listing, or null
+     * @param highWaterMark the update date of the most recently updated pull request, null to keep the current one
+     */
+    public synchronized void update(String etag, String lastModified, Date highWaterMark) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        if (highWaterMark != null) {
+            this.highWaterMark = highWaterMark;
+        }
+        dirty = true;
+    }
+
+    /**
+     * @return whether the state changed since this was last called
+     */
+    synchronized boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    synchronized void markDirty() {
+        dirty = true;
+    }
+}
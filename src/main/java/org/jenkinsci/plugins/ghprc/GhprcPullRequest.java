@@ -1,5 +1,10 @@
 package org.jenkinsci.plugins.ghprc;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.apache.commons.lang.StringUtils;
 import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHPullRequestCommitDetail;
 import org.kohsuke.github.GHUser;
@@ -7,7 +12,9 @@ import org.kohsuke.github.GitUser;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,10 +26,15 @@ import java.util.logging.Logger;
 public class GhprcPullRequest {
 
     private static final Logger logger = Logger.getLogger(GhprcPullRequest.class.getName());
+    private static final String[] FINGERPRINT_PARTS = { "head sha", "base sha", "update date", "trigger configuration" };
+    /**
+     * Version 1 stopped persisting github-api objects, see {@link #readResolve()}.
+     */
+    private static final int RECORD_VERSION = 1;
 
     private final int id;
-    private final GHUser author;
-    private final GHPullRequest pr;
+    private int version;
+    private String authorLogin;
     private String title;
     private Date updated;
     private String head;
@@ -33,11 +45,45 @@ public class GhprcPullRequest {
     private String authorEmail;
     private URL url;
 
-    private GitUser commitAuthor;
+    private String commitAuthorName;
+    private String commitAuthorEmail;
+
+    /**
+     * The state of the pull request the last build was queued for, see {@link #getFingerprint(GHPullRequest)}.
+     */
+    private String fingerprint;
+    /**
+     * The state a build is being queued for, kept until it is, or isn't, so a concurrent check doesn't queue
+     * it again.
+     */
+    private transient String pendingFingerprint;
+    private String lastDecision;
+    /**
+     * The number of the last completed build of this pull request, 0 if none.
+     */
+    private int lastBuildNumber;
+    /**
+     * The id of the comment holding the build results, 0 if not known.
+     */
+    private long commentId;
+    /**
+     * The digest of the last result comment posted, see {@link GhprcCommentDigest}.
+     */
+    private String lastCommentDigest;
+    /**
+     * The date GitHub gave the last result comment posted, which is also the update date of the pull request
+     * it causes.
+     */
+    private Date lastOwnUpdate;
 
     private transient Ghprc helper;
     private transient GhprcRepository repo;
 
+    // github-api objects, only kept in memory; older versions persisted them
+    @Deprecated
+    private transient GHUser author;
+    private transient GHPullRequest pr;
+    private transient GitUser commitAuthor;
 
     GhprcPullRequest(GHPullRequest pr, Ghprc helper, GhprcRepository repo) {
         id = pr.getNumber();
@@ -49,22 +95,45 @@ public class GhprcPullRequest {
         }
         head = pr.getHead().getSha();
         title = pr.getTitle();
-        author = pr.getUser();
+        GHUser user = pr.getUser();
+        authorLogin = user == null ? null : user.getLogin();
         reponame = repo.getName();
         target = pr.getBase().getRef();
         source = pr.getHead().getRef();
         url = pr.getHtmlUrl();
         this.pr = pr;
         obtainAuthorEmail(pr);
+        version = RECORD_VERSION;
 
         this.helper = helper;
         this.repo = repo;
 
         logger.log(Level.INFO, "Created Pull Request #{0} on {1} by {2} ({3}) updated at: {4} SHA: {5}",
-                new Object[] { id, reponame, author.getLogin(), authorEmail, updated, head }
+                new Object[] { id, reponame, authorLogin, authorEmail, updated, head }
         );
     }
 
+    /**
+     * Converts records persisted before version 1, which embedded whole github-api object graphs, to plain fields.
+     */
+    @SuppressWarnings("deprecation")
+    protected Object readResolve() {
+        if (version < RECORD_VERSION) {
+            if (author != null) {
+                authorLogin = author.getLogin();
+                author = null;
+            }
+            if (commitAuthor != null) {
+                commitAuthorName = commitAuthor.getName();
+                commitAuthorEmail = commitAuthor.getEmail();
+            }
+            // deserialized without a connection to GitHub, fetched again when needed
+            pr = null;
+            version = RECORD_VERSION;
+        }
+        return this;
+    }
+
     public void init(Ghprc helper, GhprcRepository repo) {
         this.helper = helper;
         this.repo = repo;
@@ -90,14 +159,101 @@ public class GhprcPullRequest {
             source = pr.getHead().getRef(); // If this instance was created before target was introduced (before v1.8), it can be null.
         }
 
-        updatePR(pr, author);
-        
-        tryBuild(pr);
+        if (pr != null) {
+            this.pr = pr;
+        }
+        updatePR(pr);
+
+        String current = getFingerprint(pr);
+        synchronized (this) {
+            String reason = getChangeReason(fingerprint, current);
+            if (reason == null) {
+                recordDecision(false, "nothing changed since the last build");
+                return;
+            }
+            if (current.equals(pendingFingerprint)) {
+                recordDecision(false, "a build is already being queued for it");
+                return;
+            }
+            recordDecision(true, reason);
+            pendingFingerprint = current;
+        }
+        tryBuild(pr, current);
     }
 
-    private void updatePR(GHPullRequest pr, GHUser author) {
+    /**
+     * Keeps the state a build was queued for, only once it is queued: a build that isn't, e.g. because the
+     * project was disabled meanwhile, is tried again on the next check.
+     */
+    private synchronized void buildQueued(String current, boolean queued) {
+        if (queued) {
+            fingerprint = current;
+        } else {
+            recordDecision(false, "the build couldn't be queued, it will be tried again");
+        }
+        if (current.equals(pendingFingerprint)) {
+            pendingFingerprint = null;
+        }
+    }
+
+    /**
+     * The state a build is triggered for: head sha, base sha, update date and trigger configuration.
+     */
+    private String getFingerprint(GHPullRequest pr) {
+        Date updatedAt = updated;
+        try {
+            updatedAt = pr.getUpdatedAt();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to get last updated date", e);
+        }
+        GhprcTrigger trigger = helper.getTrigger();
+        return pr.getHead().getSha() + '|' + pr.getBase().getSha() + '|' + getUpdateDate(updatedAt)
+                + '|' + (trigger == null ? "" : trigger.getConfigFingerprint());
+    }
+
+    /**
+     * @return the update date part of the fingerprint, the one of the last build if the pull request wasn't
+     *         updated since the result comment of the plugin
+     */
+    private synchronized String getUpdateDate(Date updatedAt) {
+        if (updatedAt == null) {
+            return "";
+        }
+        if (fingerprint != null && lastOwnUpdate != null && !updatedAt.after(lastOwnUpdate)) {
+            String[] parts = fingerprint.split("\\|", -1);
+            if (parts.length > 2) {
+                return parts[2];
+            }
+        }
+        return String.valueOf(updatedAt.getTime());
+    }
+
+    static String getChangeReason(String previous, String current) {
+        if (previous == null) {
+            return "no build was triggered for it yet";
+        }
+        if (previous.equals(current)) {
+            return null;
+        }
+        String[] before = previous.split("\\|", -1);
+        String[] after = current.split("\\|", -1);
+        List<String> changes = new ArrayList<String>(FINGERPRINT_PARTS.length);
+        for (int i = 0; i < FINGERPRINT_PARTS.length; i++) {
+            if (i >= before.length || i >= after.length || !before[i].equals(after[i])) {
+                changes.add(FINGERPRINT_PARTS[i] + " changed");
+            }
+        }
+        return StringUtils.join(changes, ", ");
+    }
+
+    private void recordDecision(boolean build, String reason) {
+        lastDecision = (build ? "Build triggered: " : "Build skipped: ") + reason;
+        logger.log(build ? Level.INFO : Level.FINE, "Pull request #{0} on {1}: {2}", new Object[] { id, reponame, lastDecision });
+    }
+
+    private void updatePR(GHPullRequest pr) {
         if (pr != null && isUpdated(pr)) {
-            logger.log(Level.INFO, "Pull request #{0} was updated on {1} at {2} by {3}", new Object[] { id, reponame, updated, author });
+            logger.log(Level.INFO, "Pull request #{0} was updated on {1} at {2} by {3}", new Object[] { id, reponame, updated, authorLogin });
 
             // the title could have been updated since the original PR was opened
             title = pr.getTitle();
@@ -128,9 +284,10 @@ public class GhprcPullRequest {
         return ret || !pr.getHead().getSha().equals(head);
     }
 
-    private void tryBuild(GHPullRequest pr) {
+    private void tryBuild(GHPullRequest pr, final String current) {
         if (helper.isProjectDisabled()) {
             logger.log(Level.INFO, "Project is disabled, not trying to build");
+            buildQueued(current, false);
             return;
         }
         logger.log(Level.INFO, "Running the build");
@@ -141,29 +298,65 @@ public class GhprcPullRequest {
             logger.log(Level.INFO, "Author email was not set, trying to set it to {0}", authorEmail);
         }
 
-        if (pr != null) {
-            logger.log(Level.INFO, "PR is not null, checking if mergable");
-            checkMergeable(pr);
-            try {
-                for (GHPullRequestCommitDetail commitDetails : pr.listCommits()) {
-                    if (commitDetails.getSha().equals(getHead())) {
-                        commitAuthor = commitDetails.getCommit().getCommitter();
-                        break;
-                    }
-                }
-            } catch (Exception ex) {
-                logger.log(Level.INFO, "Unable to get PR commits: ", ex);
+        if (pr == null) {
+            logger.log(Level.INFO, "Running build...");
+            build(current);
+            return;
+        }
+
+        logger.log(Level.INFO, "PR is not null, checking if mergable");
+        final GHPullRequest ghPullRequest = pr;
+        final ListenableFuture<Boolean> isMergeable;
+        try {
+            isMergeable = GhprcMergeabilityResolver.resolve(repo, id, pr.getMergeable());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Couldn't obtain mergeable status.", e);
+            mergeable = false;
+            buildWithCommitAuthor(pr, current);
+            return;
+        }
+        // the build is queued once GitHub knows whether the PR can be merged, right away if it already does
+        isMergeable.addListener(new Runnable() {
+            public void run() {
+                Boolean result = Futures.getUnchecked(isMergeable);
+                mergeable = result != null && result;
+                buildWithCommitAuthor(ghPullRequest, current);
             }
+        }, MoreExecutors.sameThreadExecutor());
+    }
 
+    private void buildWithCommitAuthor(GHPullRequest pr, String current) {
+        try {
+            for (GHPullRequestCommitDetail commitDetails : pr.listCommits()) {
+                if (commitDetails.getSha().equals(getHead())) {
+                    commitAuthor = commitDetails.getCommit().getCommitter();
+                    commitAuthorName = commitAuthor == null ? null : commitAuthor.getName();
+                    commitAuthorEmail = commitAuthor == null ? null : commitAuthor.getEmail();
+                    break;
+                }
+            }
+        } catch (Exception ex) {
+            logger.log(Level.INFO, "Unable to get PR commits: ", ex);
         }
 
         logger.log(Level.INFO, "Running build...");
-        build();
-
+        build(current);
     }
 
-    private void build() {
-        helper.getBuilds().build(this);
+    private void build(String current) {
+        GhprcBuilds builds = helper.getBuilds();
+        if (builds == null) {
+            // the trigger was stopped while the mergeability was being resolved
+            logger.log(Level.INFO, "Trigger stopped, not building pull request #{0}", id);
+            buildQueued(current, false);
+            return;
+        }
+        boolean queued = false;
+        try {
+            queued = builds.build(this);
+        } finally {
+            buildQueued(current, queued);
+        }
     }
 
     // returns false if no new commit
@@ -176,26 +369,6 @@ public class GhprcPullRequest {
         return true;
     }
 
-    private void checkMergeable(GHPullRequest pr) {
-        try {
-            int r = 5;
-            Boolean isMergeable = pr.getMergeable();
-            while (isMergeable == null && r-- > 0) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ex) {
-                    break;
-                }
-                isMergeable = pr.getMergeable();
-                pr = repo.getPullRequest(id);
-            }
-            mergeable = isMergeable != null && isMergeable;
-        } catch (IOException e) {
-            mergeable = false;
-            logger.log(Level.SEVERE, "Couldn't obtain mergeable status.", e);
-        }
-    }
-
     private void obtainAuthorEmail(GHPullRequest pr) {
         try {
             authorEmail = pr.getUser().getEmail();
@@ -257,11 +430,77 @@ public class GhprcPullRequest {
         return url;
     }
 
+    /**
+     * @return why the last check of this pull request did or didn't trigger a build
+     */
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    public int getLastBuildNumber() {
+        return lastBuildNumber;
+    }
+
+    public void setLastBuildNumber(int lastBuildNumber) {
+        this.lastBuildNumber = lastBuildNumber;
+    }
+
+    public long getCommentId() {
+        return commentId;
+    }
+
+    public void setCommentId(long commentId) {
+        this.commentId = commentId;
+    }
+
+    public String getLastCommentDigest() {
+        return lastCommentDigest;
+    }
+
+    public void setLastCommentDigest(String lastCommentDigest) {
+        this.lastCommentDigest = lastCommentDigest;
+    }
+
+    public Date getLastOwnUpdate() {
+        return lastOwnUpdate;
+    }
+
+    public void setLastOwnUpdate(Date lastOwnUpdate) {
+        this.lastOwnUpdate = lastOwnUpdate;
+    }
+
+    public String getAuthorLogin() {
+        return authorLogin;
+    }
+
+    /**
+     * @return the committer of the head commit, only known in memory since the last build was triggered
+     */
     public GitUser getCommitAuthor() {
         return commitAuthor;
     }
 
+    public String getCommitAuthorName() {
+        return commitAuthorName;
+    }
+
+    public String getCommitAuthorEmail() {
+        return commitAuthorEmail;
+    }
+
+    /**
+     * Returns the GitHub pull request, fetching it if it isn't in memory, e.g. after a restart.
+     *
+     * @return the pull request, or null if it can't be fetched
+     */
     public GHPullRequest getPullRequest() {
+        if (pr == null && repo != null) {
+            try {
+                pr = repo.getPullRequest(id);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to fetch pull request #" + id + " of " + reponame, e);
+            }
+        }
         return pr;
     }
 }
@@ -0,0 +1,350 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.listeners.ItemListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Stores the pull request state of each job in a file of its own, so that a poll or a web hook only
+ * rewrites the state of the job it changed.
+ * <p>
+ * Shards are loaded on first use and written only when marked dirty. {@link XmlFile} writes to a temporary
+ * file and renames it over the old one, so a crash never leaves a half written shard behind.
+ * <p>
+ * Saves requested through {@link #scheduleSave(String, long)} are written behind: the first request starts a
+ * flush window and every request arriving before it ends is written by the same flush. A crash loses at
+ * most the changes of one window.
+ * <p>
+ * The {@link GhprcPollState} of a job is written along with its shard, to a file of the same name in the
+ * {@code poll} directory, so that shards written by earlier versions still load.
+ */
+public class GhprcPullRequestStore {
+    private static final Logger logger = Logger.getLogger(GhprcPullRequestStore.class.getName());
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new GhprcThreadFactory("pull request store"));
+
+    private final File rootDir;
+    private final ConcurrentMap<String, Shard> shards = new ConcurrentHashMap<String, Shard>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicInteger pendingSaves = new AtomicInteger();
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private volatile long lastFlushDuration;
+    private volatile long maxFlushDuration;
+    private volatile int maxBatchSize;
+
+    /**
+     * @param rootDir the directory holding one file per job
+     */
+    public GhprcPullRequestStore(File rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    /**
+     * Returns the pull requests of a job, loading them from disk the first time.
+     *
+     * @param projectName the full name of the job
+     * @return the live map of pull requests by number
+     */
+    public ConcurrentMap<Integer, GhprcPullRequest> get(String projectName) {
+        return getShard(projectName).pulls;
+    }
+
+    /**
+     * Returns what the last poll of the repository of a job left behind, loading it from disk the first time.
+     *
+     * @param projectName the full name of the job
+     * @return the live poll state, written with the pull requests of the job
+     */
+    public GhprcPollState getPollState(String projectName) {
+        return getShard(projectName).pollState;
+    }
+
+    /**
+     * Marks the pull requests of a job as changed since they were last written.
+     */
+    public void markDirty(String projectName) {
+        getShard(projectName).dirty.set(true);
+    }
+
+    /**
+     * Marks the pull requests of a job as changed and writes them at the end of the current flush window.
+     *
+     * @param projectName the full name of the job
+     * @param window the flush window in milliseconds, 0 or less to write right away
+     */
+    public void scheduleSave(String projectName, long window) {
+        markDirty(projectName);
+        pendingSaves.incrementAndGet();
+        if (window <= 0) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes every changed shard now, covering all the saves scheduled so far.
+     */
+    public void flush() {
+        flushScheduled.set(false);
+        int batch = pendingSaves.getAndSet(0);
+        long start = System.currentTimeMillis();
+        saveAll();
+        long duration = System.currentTimeMillis() - start;
+
+        flushCount.incrementAndGet();
+        lastFlushDuration = duration;
+        if (duration > maxFlushDuration) {
+            maxFlushDuration = duration;
+        }
+        if (batch > maxBatchSize) {
+            maxBatchSize = batch;
+        }
+        logger.log(Level.FINE, "Flushed {0} pull request saves in {1} ms", new Object[] { batch, duration });
+    }
+
+    /**
+     * @return the number of flushes since Jenkins started
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return the duration of the last flush in milliseconds
+     */
+    public long getLastFlushDuration() {
+        return lastFlushDuration;
+    }
+
+    /**
+     * @return the duration of the longest flush in milliseconds
+     */
+    public long getMaxFlushDuration() {
+        return maxFlushDuration;
+    }
+
+    /**
+     * @return the largest number of saves written by a single flush
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Writes the pull requests of a job if they changed.
+     */
+    public void save(String projectName) {
+        Shard shard = shards.get(projectName);
+        if (shard != null) {
+            shard.save();
+        }
+    }
+
+    /**
+     * Writes every changed shard.
+     */
+    public void saveAll() {
+        for (Shard shard : shards.values()) {
+            shard.save();
+        }
+    }
+
+    /**
+     * Moves the pull requests kept by an older version in the global configuration to their shard.
+     * Pull requests already in the shard win.
+     */
+    public void migrate(String projectName, Map<Integer, GhprcPullRequest> pulls) {
+        Shard shard = getShard(projectName);
+        for (Map.Entry<Integer, GhprcPullRequest> pull : pulls.entrySet()) {
+            shard.pulls.putIfAbsent(pull.getKey(), pull.getValue());
+        }
+        shard.dirty.set(true);
+        shard.save();
+    }
+
+    /**
+     * Forgets the pull requests of a deleted job and deletes its files.
+     *
+     * @param projectName the full name of the job
+     */
+    public void remove(String projectName) {
+        Shard shard = shards.remove(projectName);
+        if (shard != null) {
+            shard.delete();
+        } else {
+            delete(fileFor(projectName));
+            delete(pollFileFor(projectName));
+        }
+    }
+
+    /**
+     * Moves the pull requests of a renamed job to the files of its new name. The live map and poll state
+     * stay the same objects, so a started trigger keeps working on them.
+     *
+     * @param oldName the full name of the job before it was renamed
+     * @param newName the full name of the job now
+     */
+    public void rename(String oldName, String newName) {
+        Shard shard = getShard(oldName);
+        shards.put(newName, shard.moveTo(fileFor(newName), pollFileFor(newName)));
+        shards.remove(oldName, shard);
+    }
+
+    private XmlFile fileFor(String projectName) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(rootDir, Util.rawEncode(projectName) + ".xml"));
+    }
+
+    private XmlFile pollFileFor(String projectName) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(new File(rootDir, "poll"), Util.rawEncode(projectName) + ".xml"));
+    }
+
+    private static void delete(XmlFile file) {
+        if (file.exists() && !file.getFile().delete()) {
+            logger.log(Level.WARNING, "Unable to delete {0}", file);
+        }
+    }
+
+    private Shard getShard(String projectName) {
+        Shard shard = shards.get(projectName);
+        if (shard == null) {
+            Shard loaded = new Shard(fileFor(projectName), pollFileFor(projectName));
+            shard = shards.putIfAbsent(projectName, loaded);
+            if (shard == null) {
+                shard = loaded;
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Writes the pending changes before Jenkins goes down.
+     */
+    @Extension
+    public static class GhprcPullRequestStoreShutdownListener extends ItemListener {
+
+        @Override
+        public void onBeforeShutdown() {
+            GhprcTrigger.getDscp().flushPullRequests();
+        }
+    }
+
+    private static class Shard {
+        private final XmlFile file;
+        private final ConcurrentMap<Integer, GhprcPullRequest> pulls;
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        private final XmlFile pollFile;
+        private final GhprcPollState pollState;
+        private boolean deleted;
+
+        Shard(XmlFile file, XmlFile pollFile) {
+            this(file, load(file), pollFile, loadPollState(pollFile));
+        }
+
+        private Shard(XmlFile file, ConcurrentMap<Integer, GhprcPullRequest> pulls, XmlFile pollFile, GhprcPollState pollState) {
+            this.file = file;
+            this.pulls = pulls;
+            this.pollFile = pollFile;
+            this.pollState = pollState;
+        }
+
+        private static GhprcPollState loadPollState(XmlFile file) {
+            if (file.exists()) {
+                try {
+                    return (GhprcPollState) file.read();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to load the poll state from " + file, e);
+                } catch (ClassCastException e) {
+                    logger.log(Level.WARNING, "Unexpected content in " + file, e);
+                }
+            }
+            return new GhprcPollState();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static ConcurrentMap<Integer, GhprcPullRequest> load(XmlFile file) {
+            if (file.exists()) {
+                try {
+                    return (ConcurrentMap<Integer, GhprcPullRequest>) file.read();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to load the pull requests from " + file, e);
+                } catch (ClassCastException e) {
+                    logger.log(Level.WARNING, "Unexpected content in " + file, e);
+                }
+            }
+            return new ConcurrentHashMap<Integer, GhprcPullRequest>();
+        }
+
+        /**
+         * @return false if a change couldn't be written
+         */
+        synchronized boolean save() {
+            if (deleted) {
+                return true;
+            }
+            boolean saved = true;
+            if (dirty.getAndSet(false)) {
+                try {
+                    file.write(pulls);
+                } catch (IOException e) {
+                    dirty.set(true);
+                    saved = false;
+                    logger.log(Level.WARNING, "Unable to save the pull requests to " + file, e);
+                }
+            }
+            if (pollState.takeDirty()) {
+                try {
+                    pollFile.write(pollState);
+                } catch (IOException e) {
+                    pollState.markDirty();
+                    saved = false;
+                    logger.log(Level.WARNING, "Unable to save the poll state to " + pollFile, e);
+                }
+            }
+            return saved;
+        }
+
+        synchronized void delete() {
+            deleted = true;
+            GhprcPullRequestStore.delete(file);
+            GhprcPullRequestStore.delete(pollFile);
+        }
+
+        /**
+         * Writes the content of this shard to the given files and deletes its own once they are written.
+         */
+        synchronized Shard moveTo(XmlFile newFile, XmlFile newPollFile) {
+            Shard moved = new Shard(newFile, pulls, newPollFile, pollState);
+            moved.dirty.set(true);
+            pollState.markDirty();
+            deleted = true;
+            if (moved.save()) {
+                GhprcPullRequestStore.delete(file);
+                GhprcPullRequestStore.delete(pollFile);
+            }
+            return moved;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.security.ACL;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps track of the GitHub API rate limit of one endpoint and credential, shared by every job using them.
+ * <p>
+ * The budget is learned from the <code>X-RateLimit-*</code> headers of the responses to normal API calls,
+ * so no extra call is needed to find out whether calls can be made. {@link HttpConnectorWithJenkinsProxy}
+ * charges every request to the budget as it is sent and corrects it from the headers of the response, so
+ * work making many calls is accounted for call by call. Low priority work (polling, comments)
+ * leaves a reserve of the budget to high priority work (commit statuses of running builds), and work that
+ * doesn't fit in the budget is delayed until the limit resets instead of being dropped.
+ */
+public class GhprcRateLimitScheduler {
+    private static final Logger logger = Logger.getLogger(GhprcRateLimitScheduler.class.getName());
+
+    public enum Priority {
+        HIGH, LOW
+    }
+
+    /**
+     * Share of the budget only high priority work may use.
+     */
+    static final int RESERVE_PERCENT = 10;
+
+    private static final ConcurrentMap<String, GhprcRateLimitScheduler> schedulers = new ConcurrentHashMap<String, GhprcRateLimitScheduler>();
+    private static final ScheduledExecutorService delayed = Executors.newSingleThreadScheduledExecutor(new GhprcThreadFactory("rate limit"));
+
+    private final String name;
+
+    // all guarded by this, -1 when unknown
+    private int limit = -1;
+    private int remaining = -1;
+    private long resetTime;
+
+    GhprcRateLimitScheduler(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the scheduler shared by every user of the auth's endpoint and credentials.
+     *
+     * @param auth the GitHub auth, may be null
+     * @return the scheduler, or null if there is no auth
+     */
+    public static GhprcRateLimitScheduler get(GhprcGitHubAuth auth) {
+        if (auth == null) {
+            return null;
+        }
+        return get(auth.getServerAPIUrl(), auth.getCredentialsId());
+    }
+
+    /**
+     * @param serverAPIUrl the API endpoint
+     * @param credentialsId the credentials the calls are made with, may be null
+     * @return the scheduler shared by every user of the endpoint and credentials
+     */
+    public static GhprcRateLimitScheduler get(String serverAPIUrl, String credentialsId) {
+        String key = serverAPIUrl + '|' + credentialsId;
+        GhprcRateLimitScheduler scheduler = schedulers.get(key);
+        if (scheduler == null) {
+            schedulers.putIfAbsent(key, new GhprcRateLimitScheduler(key));
+            scheduler = schedulers.get(key);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Tells whether the budget allows work of the given priority to start. The calls the work makes are
+     * charged one by one as they are sent.
+     *
+     * @param priority the priority of the work
+     * @return false if the work should wait for the limit to reset
+     */
+    public synchronized boolean tryAcquire(Priority priority) {
+        long now = System.currentTimeMillis();
+        if (remaining >= 0 && now >= resetTime) {
+            // the limit has been reset, the next response tells us the new budget
+            remaining = -1;
+        }
+        if (remaining < 0) {
+            return true;
+        }
+        int reserve = priority == Priority.HIGH ? 0 : limit * RESERVE_PERCENT / 100;
+        return remaining > reserve;
+    }
+
+    /**
+     * Takes one call from the budget for a request being sent, until its response tells the actual budget.
+     */
+    synchronized void charge() {
+        if (remaining > 0) {
+            remaining--;
+        }
+    }
+
+    /**
+     * Waits for the budget to allow work of the given priority to start.
+     *
+     * @param priority the priority of the work
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquire(Priority priority) throws InterruptedException {
+        while (!tryAcquire(priority)) {
+            long wait = resetTime - System.currentTimeMillis();
+            logger.log(Level.INFO, "GitHub rate limit for {0} exhausted, waiting {1}s for it to reset",
+                    new Object[] { name, TimeUnit.MILLISECONDS.toSeconds(wait) });
+            wait(Math.max(wait, 1));
+        }
+    }
+
+    /**
+     * Runs the task right away if the budget allows it, otherwise once the limit has been reset.
+     *
+     * @param priority the priority of the work
+     * @param task the work
+     */
+    public void execute(final Priority priority, final Runnable task) {
+        if (tryAcquire(priority)) {
+            try {
+                task.run();
+            } finally {
+                HttpConnectorWithJenkinsProxy.settle();
+            }
+            return;
+        }
+        runAfterReset(new Runnable() {
+            public void run() {
+                execute(priority, task);
+            }
+        });
+    }
+
+    /**
+     * Runs the task once the current limit has been reset.
+     *
+     * @param task the work, run as the system user
+     */
+    public void runAfterReset(final Runnable task) {
+        long delay = getResetTime() - System.currentTimeMillis();
+        logger.log(Level.INFO, "GitHub rate limit for {0} is low, delaying work by {1}s",
+                new Object[] { name, TimeUnit.MILLISECONDS.toSeconds(delay) });
+        delayed.schedule(new Runnable() {
+            public void run() {
+                Authentication old = SecurityContextHolder.getContext().getAuthentication();
+                SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Unable to run delayed GitHub work", e);
+                } finally {
+                    SecurityContextHolder.getContext().setAuthentication(old);
+                }
+            }
+        }, Math.max(delay, 0) + 1000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Updates the budget from the rate limit headers of a response.
+     */
+    void update(HttpURLConnection connection) {
+        String limitHeader = connection.getHeaderField("X-RateLimit-Limit");
+        String remainingHeader = connection.getHeaderField("X-RateLimit-Remaining");
+        String resetHeader = connection.getHeaderField("X-RateLimit-Reset");
+        if (limitHeader == null || remainingHeader == null || resetHeader == null) {
+            // GitHub Enterprise without rate limiting
+            return;
+        }
+        try {
+            update(Integer.parseInt(limitHeader), Integer.parseInt(remainingHeader),
+                    TimeUnit.SECONDS.toMillis(Long.parseLong(resetHeader)));
+        } catch (NumberFormatException e) {
+            logger.log(Level.FINE, "Unable to parse rate limit headers", e);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void update(int limit, int remaining, long resetTime) {
+        this.limit = limit;
+        this.remaining = remaining;
+        this.resetTime = resetTime;
+        notifyAll();
+        logger.log(Level.FINE, "GitHub rate limit for {0}: {1} of {2} calls left",
+                new Object[] { name, remaining, limit });
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getRemaining() {
+        return remaining;
+    }
+
+    public synchronized long getResetTime() {
+        return resetTime;
+    }
+}
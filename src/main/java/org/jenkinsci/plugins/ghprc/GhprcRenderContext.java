@@ -0,0 +1,150 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.EnvVars;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommentAppender;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatus;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommentAppender;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommitStatus;
+import org.kohsuke.github.GHRepository;
+
+/**
+ * Expands macros of a build in messages, status contexts, URLs and file names.
+ * <p>
+ * Computing the environment of a build runs every environment contributor, so it is done once per context and
+ * reused for everything rendered with it. A context is created for each phase of a build, when it starts and
+ * when it completes, and handed to the extensions of the trigger. Variables added to the build in between are
+ * only seen by the next phase.
+ */
+public class GhprcRenderContext {
+    private static final Logger logger = Logger.getLogger(GhprcRenderContext.class.getName());
+
+    private final AbstractBuild<?, ?> build;
+    private final TaskListener listener;
+
+    private EnvVars environment;
+    private Map<String, String> variables;
+
+    /**
+     * @param build the build, may be null to render nothing
+     * @param listener the listener of the build
+     */
+    public GhprcRenderContext(AbstractBuild<?, ?> build, TaskListener listener) {
+        this.build = build;
+        this.listener = listener;
+    }
+
+    public AbstractBuild<?, ?> getBuild() {
+        return build;
+    }
+
+    public TaskListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the environment of the build, computed on first use
+     */
+    public EnvVars getEnvironment() {
+        if (environment == null) {
+            try {
+                environment = build.getEnvironment(listener);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Couldn't get the environment of " + build, e);
+                environment = new EnvVars();
+            }
+        }
+        return environment;
+    }
+
+    /**
+     * @return the characteristic variables, the build variables and the environment of the build, computed on
+     *         first use
+     */
+    public Map<String, String> getVariables() {
+        if (variables == null) {
+            Map<String, String> vars = new HashMap<String, String>();
+            vars.putAll(build.getCharacteristicEnvVars());
+            vars.putAll(build.getBuildVariables());
+            vars.putAll(getEnvironment());
+            variables = vars;
+        }
+        return variables;
+    }
+
+    /**
+     * Replaces the variables of the build, see {@link #getVariables()}.
+     *
+     * @return the input with its macros replaced, the input itself if there is no build
+     */
+    public String replaceMacros(String input) {
+        if (build == null || input == null) {
+            return input;
+        }
+        try {
+            return Util.replaceMacro(input, getVariables());
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Couldn't replace macros in message: ", e);
+            return input;
+        }
+    }
+
+    /**
+     * Expands the environment of the build only, as {@link EnvVars#expand(String)} does.
+     *
+     * @return the expanded input, the input itself if there is no build
+     */
+    public String expand(String input) {
+        if (build == null || listener == null || input == null) {
+            return input;
+        }
+        return getEnvironment().expand(input);
+    }
+
+    /**
+     * Tells the commit status that the build started, with this context if it takes one and with the build and
+     * its listener otherwise.
+     */
+    @SuppressWarnings("deprecation")
+    public void onBuildStart(GhprcCommitStatus status, GHRepository repo) throws GhprcCommitStatusException {
+        if (status instanceof GhprcContextCommitStatus) {
+            ((GhprcContextCommitStatus) status).onBuildStart(this, repo);
+        } else {
+            status.onBuildStart(build, listener, repo);
+        }
+    }
+
+    /**
+     * Tells the commit status that the build completed, with this context if it takes one and with the build
+     * and its listener otherwise.
+     */
+    @SuppressWarnings("deprecation")
+    public void onBuildComplete(GhprcCommitStatus status, GHRepository repo) throws GhprcCommitStatusException {
+        if (status instanceof GhprcContextCommitStatus) {
+            ((GhprcContextCommitStatus) status).onBuildComplete(this, repo);
+        } else {
+            status.onBuildComplete(build, listener, repo);
+        }
+    }
+
+    /**
+     * Asks the appender for its part of the result comment, with this context if it takes one and with the build
+     * and its listener otherwise.
+     */
+    @SuppressWarnings("deprecation")
+    public String postBuildComment(GhprcCommentAppender appender) {
+        if (appender instanceof GhprcContextCommentAppender) {
+            return ((GhprcContextCommentAppender) appender).postBuildComment(this);
+        }
+        return appender.postBuildComment(build, listener);
+    }
+}
@@ -1,13 +1,16 @@
 package org.jenkinsci.plugins.ghprc;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
+import org.kohsuke.github.GHBranch;
 import org.kohsuke.github.GHCommitState;
 import org.kohsuke.github.GHEvent;
-import org.kohsuke.github.GHEventPayload.PullRequest;
 import org.kohsuke.github.GHHook;
 import org.kohsuke.github.GHIssueComment;
 import org.kohsuke.github.GHIssueState;
@@ -19,13 +22,19 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -37,29 +46,61 @@ import java.util.regex.Pattern;
 public class GhprcRepository {
 
     private static final Logger logger = Logger.getLogger(GhprcRepository.class.getName());
-    private static final EnumSet<GHEvent> HOOK_EVENTS = EnumSet.of(GHEvent.ISSUE_COMMENT, GHEvent.PULL_REQUEST);
-    private static final String MD5_SIGNATURE_PREFIX = "\nmd5 hash: ";
-    private static final String MD5_SIGNATURE_REGEXP = MD5_SIGNATURE_PREFIX + "([a-f0-9]{32})";
-    private static final Pattern MD5_SIGNATURE_PATTERN = Pattern.compile(MD5_SIGNATURE_REGEXP);
+    private static final EnumSet<GHEvent> HOOK_EVENTS = EnumSet.of(GHEvent.ISSUE_COMMENT, GHEvent.PULL_REQUEST, GHEvent.PUSH);
+    private static final String DIGEST_SIGNATURE_REGEXP = "\n(?:md5|sha256|murmur3) hash: ([a-f0-9]{32,64})";
+    private static final Pattern DIGEST_SIGNATURE_PATTERN = Pattern.compile(DIGEST_SIGNATURE_REGEXP);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int UPDATED_PAGE_SIZE = 100;
+    /**
+     * Pages of comments searched for the comment of the bot when its id isn't known.
+     */
+    private static final int COMMENT_SEARCH_PAGES = 3;
+
+    /**
+     * The polls running, by repository. Jobs watching the same repository don't poll it at the same time, so
+     * the poll concurrency is a limit on the checks made against one repository.
+     */
+    private static final ConcurrentMap<String, AtomicBoolean> polling = new ConcurrentHashMap<String, AtomicBoolean>();
 
     private final String reponame;
     private final ConcurrentMap<Integer, GhprcPullRequest> pulls;
+    private final GhprcBranchHeads branchHeads = new GhprcBranchHeads();
 
     private GHRepository ghRepository;
+    private GhprcRateLimitScheduler rateLimit;
+    private GhprcRestClient restClient;
+    private final GhprcPollState pollState;
+    private final AtomicBoolean checkDeferred = new AtomicBoolean();
+    private final AtomicLong pollCount = new AtomicLong();
+    private final AtomicLong totalPollDuration = new AtomicLong();
+    private volatile long lastPollDuration;
+    private volatile long maxPollDuration;
     private Ghprc helper;
 
     public GhprcRepository(String user, String repository, Ghprc helper, ConcurrentMap<Integer, GhprcPullRequest> pulls) {
+        this(user, repository, helper, pulls, new GhprcPollState());
+    }
+
+    /**
+     * @param pollState where the validators and the high water mark of the polls are kept between restarts
+     */
+    public GhprcRepository(String user, String repository, Ghprc helper, ConcurrentMap<Integer, GhprcPullRequest> pulls,
+            GhprcPollState pollState) {
         this.reponame = user + "/" + repository;
         this.helper = helper;
         this.pulls = pulls;
+        this.pollState = pollState;
+        pollState.useFor(reponame);
     }
 
+    /**
+     * Attaches the stored pull requests to this repository. Nothing is fetched from GitHub here: the
+     * repository is resolved on first use and the pull requests when they are next checked.
+     */
     public void init() {
         for (GhprcPullRequest pull : pulls.values()) {
             pull.init(helper, this);
         }
-        // make the initial check call to populate our data structures
-        initGhRepository();
     }
 
     private boolean initGhRepository() {
@@ -74,13 +115,10 @@ public class GhprcRepository {
                 logger.log(Level.SEVERE, "No connection returned to GitHub server!");
                 return false;
             }
-            if (gitHub.getRateLimit().remaining == 0) {
-                return false;
-            }
-        } catch (FileNotFoundException ex) {
-            logger.log(Level.INFO, "Rate limit API not found.");
+            rateLimit = repo.getRateLimitScheduler();
+            restClient = repo.getRestClient();
         } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Error while accessing rate limit API", ex);
+            logger.log(Level.SEVERE, "Error while connecting to GitHub", ex);
             return false;
         }
 
@@ -105,32 +143,223 @@ public class GhprcRepository {
             return;
         }
 
+        if (rateLimit != null && !rateLimit.tryAcquire(GhprcRateLimitScheduler.Priority.LOW)) {
+            deferCheck();
+            return;
+        }
+        AtomicBoolean guard = getPollGuard();
+        if (!guard.compareAndSet(false, true)) {
+            logger.log(Level.INFO, "Another poll of {0} is still running, skipping this one", reponame);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            poll();
+        } finally {
+            guard.set(false);
+            recordPoll(System.currentTimeMillis() - start);
+            HttpConnectorWithJenkinsProxy.settle();
+        }
+    }
+
+    private AtomicBoolean getPollGuard() {
+        String key = reponame.toLowerCase();
+        AtomicBoolean guard = polling.get(key);
+        if (guard == null) {
+            polling.putIfAbsent(key, new AtomicBoolean());
+            guard = polling.get(key);
+        }
+        return guard;
+    }
+
+    private void poll() {
+        GhprcRestClient.Response probe = probePullRequests();
+        if (probe != null && probe.isNotModified()) {
+            logger.log(Level.FINE, "No pull request of {0} changed since the last poll", reponame);
+            return;
+        }
+        Date newest = probe == null ? null : newestUpdate(probe.getBody());
+        boolean checked;
+        Date highWaterMark = pollState.getHighWaterMark();
+        if (probe != null && highWaterMark != null) {
+            Date seen = checkUpdatedPullRequests(highWaterMark);
+            checked = seen != null;
+            if (seen != null && (newest == null || seen.after(newest))) {
+                newest = seen;
+            }
+        } else {
+            checked = checkPullRequests();
+        }
+        // a poll that failed partway leaves the state alone, so the next one checks the same pull requests again
+        if (checked && probe != null) {
+            pollState.update(probe.getEtag(), probe.getLastModified(), newest);
+        }
+    }
+
+    private void recordPoll(long duration) {
+        lastPollDuration = duration;
+        long count = pollCount.incrementAndGet();
+        long total = totalPollDuration.addAndGet(duration);
+        if (duration > maxPollDuration) {
+            maxPollDuration = duration;
+        }
+        logger.log(Level.FINE, "Polled {0} in {1} ms, {2} ms on average", new Object[] { reponame, duration, total / count });
+    }
+
+    /**
+     * Runs the check skipped for lack of API calls once the rate limit resets, at most once per reset.
+     */
+    private void deferCheck() {
+        if (!checkDeferred.compareAndSet(false, true)) {
+            return;
+        }
+        rateLimit.runAfterReset(new Runnable() {
+            public void run() {
+                checkDeferred.set(false);
+                check();
+            }
+        });
+    }
+
+    /**
+     * Asks GitHub whether any pull request changed since the last complete check. Every change to a pull
+     * request, closing it included, bumps its update date and so changes the first page of this listing.
+     * A 304 answer doesn't count against the rate limit.
+     *
+     * @return the answer, or null if the question can't be asked
+     */
+    private GhprcRestClient.Response probePullRequests() {
+        if (restClient == null) {
+            return null;
+        }
+        try {
+            return restClient.get("/repos/" + reponame + "/pulls?state=all&sort=updated&direction=desc&per_page=1",
+                    pollState.getEtag(), pollState.getLastModified());
+        } catch (IOException ex) {
+            logger.log(Level.FINE, "Conditional poll of " + reponame + " failed, checking all pull requests", ex);
+            return null;
+        }
+    }
+
+    private Date newestUpdate(String body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            JsonNode pulls = MAPPER.readTree(body);
+            return pulls.size() == 0 ? null : GhprcWebHookEvent.parseDate(pulls.get(0).path("updated_at").asText());
+        } catch (IOException ex) {
+            logger.log(Level.FINE, "Unable to read the pull requests of " + reponame, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Checks only the pull requests updated since the last complete check, paging through them from the
+     * most recently updated and stopping at the first one that wasn't.
+     *
+     * @param since the update date of the most recently updated pull request at the last check
+     * @return the update date of the most recently updated pull request, or null if the check failed
+     */
+    private Date checkUpdatedPullRequests(Date since) {
+        Date newest = since;
+        List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>();
+        try {
+            pages: for (int page = 1;; page++) {
+                GhprcRestClient.Response response = restClient.get("/repos/" + reponame
+                        + "/pulls?state=all&sort=updated&direction=desc&per_page=" + UPDATED_PAGE_SIZE + "&page=" + page, null, null);
+                JsonNode updated = MAPPER.readTree(response.getBody());
+                for (JsonNode item : updated) {
+                    Date updatedAt = GhprcWebHookEvent.parseDate(item.path("updated_at").asText());
+                    // dates only have a precision of a second, pull requests updated in the same second are checked again
+                    if (updatedAt == null || updatedAt.before(since)) {
+                        break pages;
+                    }
+                    if (updatedAt.after(newest)) {
+                        newest = updatedAt;
+                    }
+                    final int number = item.path("number").asInt();
+                    if ("closed".equals(item.path("state").asText())) {
+                        pulls.remove(number);
+                    } else {
+                        checks.add(new Callable<Boolean>() {
+                            public Boolean call() throws IOException {
+                                check(ghRepository.getPullRequest(number));
+                                return true;
+                            }
+                        });
+                    }
+                }
+                if (updated.size() < UPDATED_PAGE_SIZE) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Could not retrieve updated pull requests of " + reponame, ex);
+            return null;
+        }
+        return runChecks(checks) ? newest : null;
+    }
+
+    private boolean checkPullRequests() {
         List<GHPullRequest> openPulls;
         try {
             openPulls = ghRepository.getPullRequests(GHIssueState.OPEN);
         } catch (IOException ex) {
             logger.log(Level.SEVERE, "Could not retrieve open pull requests.", ex);
-            return;
+            return false;
         }
         Set<Integer> closedPulls = new HashSet<Integer>(pulls.keySet());
-
-        for (GHPullRequest pr : openPulls) {
-            if (pr.getHead() == null) {
-                try {
-                    pr = ghRepository.getPullRequest(pr.getNumber());
-                } catch (IOException ex) {
-                    logger.log(Level.SEVERE, "Could not retrieve pr " + pr.getNumber(), ex);
-                    return;
+        List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>(openPulls.size());
+
+        for (final GHPullRequest open : openPulls) {
+            closedPulls.remove(open.getNumber());
+            checks.add(new Callable<Boolean>() {
+                public Boolean call() {
+                    GHPullRequest pr = open;
+                    if (pr.getHead() == null) {
+                        try {
+                            pr = ghRepository.getPullRequest(pr.getNumber());
+                        } catch (IOException ex) {
+                            logger.log(Level.SEVERE, "Could not retrieve pr " + pr.getNumber(), ex);
+                            return false;
+                        }
+                    }
+                    check(pr);
+                    return true;
                 }
-            }
-            check(pr);
-            closedPulls.remove(pr.getNumber());
+            });
+        }
+        if (!runChecks(checks)) {
+            return false;
         }
 
         // remove closed pulls so we don't check them again
         for (Integer id : closedPulls) {
             pulls.remove(id);
         }
+        return true;
+    }
+
+    /**
+     * Checks the pull requests, as many at a time as the global configuration allows.
+     */
+    private boolean runChecks(List<Callable<Boolean>> checks) {
+        int concurrency = checks.size() <= 1 ? 1 : GhprcTrigger.getDscp().getPollConcurrency();
+        if (concurrency <= 1) {
+            for (Callable<Boolean> check : checks) {
+                try {
+                    if (!check.call()) {
+                        return false;
+                    }
+                } catch (Exception ex) {
+                    logger.log(Level.SEVERE, "Unable to check pull request of " + reponame, ex);
+                    return false;
+                }
+            }
+            return true;
+        }
+        return GhprcCheckExecutor.runAll(checks, concurrency);
     }
 
     private void check(GHPullRequest pr) {
@@ -170,39 +399,202 @@ public class GhprcRepository {
         return reponame;
     }
 
-    public void addOrUpdateComment(int id, String comment, String md5, AbstractBuild<?, ?> build, TaskListener listener) {
+    /**
+     * Posts a build result comment, replacing the one posted for an earlier build. The comment is posted on
+     * the calling thread, unless the rate limit leaves no room for it: then it is posted once the limit resets.
+     *
+     * @param id the pull request number
+     * @param comment the comment, environment variables of the build are expanded
+     * @param digest the digest of the comment, see {@link GhprcCommentDigest}
+     * @param build the build, may be null
+     * @param listener the listener of the build, may be null
+     */
+    public void addOrUpdateComment(int id, String comment, String digest, AbstractBuild<?, ?> build, TaskListener listener) {
+        addOrUpdateComment(id, comment, digest, new GhprcRenderContext(build, listener));
+    }
+
+    /**
+     * Posts a build result comment, replacing the one posted for an earlier build. The comment is posted on
+     * the calling thread, unless the rate limit leaves no room for it: then it is posted once the limit resets.
+     *
+     * @param id the pull request number
+     * @param comment the comment, the environment of the context is expanded
+     * @param digest the digest of the comment, see {@link GhprcCommentDigest}
+     * @param context the context of the build
+     */
+    public void addOrUpdateComment(int id, String comment, String digest, GhprcRenderContext context) {
         if (comment.trim().isEmpty())
             return;
 
-        if (build != null && listener != null) {
+        comment = context.expand(comment);
+
+        final int pullId = id;
+        final String expandedComment = comment;
+        final String commentDigest = digest;
+        Runnable addComment = new Runnable() {
+            public void run() {
+                try {
+                    postComment(pullId, expandedComment, commentDigest);
+                } catch (IOException ex) {
+                    logger.log(Level.SEVERE, "Couldn't add comment to pull request #" + pullId + ": '" + expandedComment + "'", ex);
+                }
+            }
+        };
+        GhprcRateLimitScheduler scheduler = getRateLimitScheduler();
+        if (scheduler == null) {
+            addComment.run();
+        } else {
+            scheduler.execute(GhprcRateLimitScheduler.Priority.LOW, addComment);
+        }
+    }
+
+    private GhprcRateLimitScheduler getRateLimitScheduler() {
+        if (rateLimit == null && helper.getGitHub() != null) {
+            rateLimit = helper.getGitHub().getRateLimitScheduler();
+        }
+        return rateLimit;
+    }
+
+    /**
+     * Adds the comment, or replaces the one posted for an earlier build. The id of that comment is kept
+     * with the pull request, so replacing it takes a single call; it is only looked for among the comments
+     * when it isn't known, or when the comment can't be edited anymore, e.g. it was deleted or the
+     * credentials now belong to another account.
+     */
+    private void postComment(int pullId, String comment, String digest) throws IOException {
+        if (restClient == null) {
+            initGhRepository();
+        }
+        if (restClient == null) {
+            if (addOrUpdateComment(getGitHubRepo().getPullRequest(pullId), comment, digest)) {
+                rememberComment(pullId, 0, digest, null);
+            }
+            return;
+        }
+        String body = comment + signature(digest);
+        GhprcPullRequest pull = pulls.get(pullId);
+        long commentId = pull == null ? 0 : pull.getCommentId();
+        if (commentId > 0) {
             try {
-                comment = build.getEnvironment(listener).expand(comment);
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Error", e);
+                JsonNode updated = updateComment(commentId, body);
+                rememberComment(pullId, commentId, digest, updated);
+                return;
+            } catch (FileNotFoundException ex) {
+                logger.log(Level.INFO, "Comment {0} on pull request #{1} is gone, looking for another one", new Object[] { commentId, pullId });
+                forgetComment(pull);
+            } catch (GhprcRestClient.ErrorResponseException ex) {
+                logger.log(Level.INFO, "Comment {0} on pull request #{1} can''t be edited ({2}), looking for another one",
+                        new Object[] { commentId, pullId, ex.getStatus() });
+                forgetComment(pull);
             }
         }
 
-        try {
-            addOrUpdateComment(getGitHubRepo().getPullRequest(id), comment, md5);
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Couldn't add comment to pull request #" + id + ": '" + comment + "'", ex);
+        JsonNode existing = findBotComment(pullId);
+        JsonNode posted = null;
+        if (existing == null) {
+            posted = MAPPER.readTree(restClient.send("POST", "/repos/" + reponame + "/issues/" + pullId + "/comments",
+                    toCommentJson(body)).getBody());
+            commentId = posted.path("id").asLong();
+            logger.log(Level.INFO, "Posted new comment");
+        } else {
+            commentId = existing.path("id").asLong();
+            if (!digest.equals(getSignedDigest(existing.path("body").asText()))) {
+                posted = updateComment(commentId, body);
+            } else {
+                logger.log(Level.INFO, "Comment body has not changed");
+            }
+        }
+        rememberComment(pullId, commentId, digest, posted);
+    }
+
+    /**
+     * Keeps the id and digest of the result comment with the pull request, so the next build can skip
+     * posting an identical comment and replace a different one directly. The date of the comment is kept
+     * too: posting it updates the pull request, which isn't a change to build.
+     *
+     * @param posted the comment as GitHub answered it, null if it wasn't posted
+     */
+    private void rememberComment(int pullId, long commentId, String digest, JsonNode posted) {
+        GhprcPullRequest pull = pulls.get(pullId);
+        if (pull == null) {
+            return;
+        }
+        if (commentId > 0) {
+            pull.setCommentId(commentId);
+        }
+        pull.setLastCommentDigest(digest);
+        Date postedAt = posted == null ? null : GhprcWebHookEvent.parseDate(posted.path("updated_at").asText());
+        if (postedAt != null) {
+            pull.setLastOwnUpdate(postedAt);
         }
+        GhprcTrigger.getDscp().savePullRequests(helper.getTrigger().getProject());
+    }
+
+    /**
+     * Drops the id of a comment that can't be edited, so it isn't tried again should posting fail.
+     */
+    private void forgetComment(GhprcPullRequest pull) {
+        pull.setCommentId(0);
+        GhprcTrigger.getDscp().savePullRequests(helper.getTrigger().getProject());
     }
 
-    private void addOrUpdateComment(GHPullRequest pullRequest, String commentStr, String md5) throws IOException {
+    private static String signature(String digest) {
+        return "\n" + GhprcTrigger.getDscp().getCommentDigest().getLabel() + " hash: " + digest;
+    }
+
+    private static String getSignedDigest(String body) {
+        Matcher matcher = DIGEST_SIGNATURE_PATTERN.matcher(body);
+        String digest = null;
+        while (matcher.find()) {
+            digest = matcher.group(1);
+        }
+        return digest;
+    }
+
+    private JsonNode updateComment(long commentId, String body) throws IOException {
+        GhprcRestClient.Response response = restClient.send("PATCH", "/repos/" + reponame + "/issues/comments/" + commentId,
+                toCommentJson(body));
+        logger.log(Level.INFO, "Updated comment body");
+        return response == null || response.getBody() == null ? null : MAPPER.readTree(response.getBody());
+    }
+
+    private JsonNode findBotComment(int pullId) throws IOException {
+        String myself = helper.getGitHub().getBotUserLogin();
+        if (myself == null) {
+            throw new IOException("Unable to find out which user Jenkins connects as");
+        }
+        for (int page = 1; page <= COMMENT_SEARCH_PAGES; page++) {
+            JsonNode comments = MAPPER.readTree(restClient.get("/repos/" + reponame + "/issues/" + pullId + "/comments?per_page="
+                    + UPDATED_PAGE_SIZE + "&page=" + page, null, null).getBody());
+            for (JsonNode comment : comments) {
+                if (myself.equals(comment.path("user").path("login").asText())) {
+                    return comment;
+                }
+            }
+            if (comments.size() < UPDATED_PAGE_SIZE) {
+                return null;
+            }
+        }
+        logger.log(Level.FINE, "No comment of {0} in the first {1} pages of pull request #{2}",
+                new Object[] { myself, COMMENT_SEARCH_PAGES, pullId });
+        return null;
+    }
+
+    private static String toCommentJson(String body) {
+        return MAPPER.createObjectNode().put("body", body).toString();
+    }
+
+    private boolean addOrUpdateComment(GHPullRequest pullRequest, String commentStr, String digest) throws IOException {
         List<GHIssueComment> commentsList;
         try {
             commentsList = pullRequest.getComments();
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error loading comments from pull request", e);
-            return;
+            return false;
         }
-        String myself;
-        try {
-            myself = helper.getGitHub().get().getMyself().getLogin();
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Error getting myself from github", e);
-            return;
+        String myself = helper.getGitHub().getBotUserLogin();
+        if (myself == null) {
+            return false;
         }
         GHIssueComment myComment = null;
         for (GHIssueComment comment : commentsList) {
@@ -213,23 +605,15 @@ public class GhprcRepository {
                 }
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "Error getting user from comment", e);
-                return;
+                return false;
             }
         }
-        commentStr = commentStr + MD5_SIGNATURE_PREFIX + md5;
+        commentStr = commentStr + signature(digest);
         if (myComment == null) {
             pullRequest.comment(commentStr);
             logger.log(Level.INFO, "Posted new comment");
         } else {
-
-            Matcher matcher = MD5_SIGNATURE_PATTERN.matcher(myComment.getBody());
-
-            String prevMd5 = null;
-            while (matcher.find()) {
-                prevMd5 = matcher.group(1);
-            }
-
-            boolean changed = prevMd5 == null || !md5.equals(prevMd5);
+            boolean changed = !digest.equals(getSignedDigest(myComment.getBody()));
             if (changed) {
                 myComment.update(commentStr);
                 logger.log(Level.INFO, "Updated comment body");
@@ -237,6 +621,7 @@ public class GhprcRepository {
                 logger.log(Level.INFO, "Comment body has not changed");
             }
         }
+        return true;
     }
 
     public void closePullRequest(int id) {
@@ -262,7 +647,7 @@ public class GhprcRepository {
     }
 
     public boolean createHook() {
-        if (ghRepository == null) {
+        if (getGitHubRepo() == null) {
             logger.log(Level.INFO, "Repository not available, cannot set pull request hook for repository {0}", reponame);
             return false;
         }
@@ -289,34 +674,110 @@ public class GhprcRepository {
         return getGitHubRepo().getPullRequest(id);
     }
 
-    void onPullRequestHook(PullRequest pr) {
-        logger.log(Level.INFO, "Pull request hook action: {0}", pr.getAction());
-        if ("closed".equals(pr.getAction())) {
-            pulls.remove(pr.getNumber());
+    /**
+     * Returns the head commit of a branch, fetching only that branch's ref when it isn't known from a
+     * recent lookup or web hook.
+     *
+     * @param branch the branch name
+     * @return the sha of the branch head
+     * @throws IOException if the branch doesn't exist or can't be fetched
+     */
+    public String getBranchHead(String branch) throws IOException {
+        String sha = branchHeads.get(branch);
+        if (sha != null) {
+            return sha;
+        }
+        GHRepository repository = getGitHubRepo();
+        if (restClient != null) {
+            sha = fetchBranchHead(branch);
+        } else if (repository != null) {
+            GHBranch ghBranch = repository.getBranches().get(branch);
+            sha = ghBranch == null ? null : ghBranch.getSHA1();
+        }
+        if (sha == null) {
+            throw new IOException("Could not find branch " + branch + " of " + reponame);
+        }
+        branchHeads.put(branch, sha);
+        return sha;
+    }
+
+    private String fetchBranchHead(String branch) throws IOException {
+        StringBuilder path = new StringBuilder("/repos/").append(reponame).append("/git/refs/heads");
+        for (String segment : branch.split("/")) {
+            path.append('/').append(Util.rawEncode(segment));
+        }
+        JsonNode ref = MAPPER.readTree(restClient.get(path.toString(), null, null).getBody());
+        // a ref that isn't found exactly is matched as a prefix, and all the matching refs are listed
+        if (ref.isArray()) {
+            for (JsonNode item : ref) {
+                if (("refs/heads/" + branch).equals(item.path("ref").asText())) {
+                    return Util.fixEmpty(item.path("object").path("sha").asText());
+                }
+            }
+            return null;
+        }
+        return Util.fixEmpty(ref.path("object").path("sha").asText());
+    }
+
+    void onPushHook(GhprcWebHookEvent event) {
+        if (event.getBranch() == null) {
+            return;
+        }
+        if (event.getBranchSha() == null) {
+            branchHeads.remove(event.getBranch());
+        } else {
+            branchHeads.put(event.getBranch(), event.getBranchSha());
+        }
+    }
+
+    void onPullRequestHook(GhprcWebHookEvent event) throws IOException {
+        logger.log(Level.INFO, "Pull request hook action: {0}", event.getAction());
+        if ("closed".equals(event.getAction())) {
+            pulls.remove(event.getNumber());
         } else if (helper.isProjectDisabled()) {
             logger.log(Level.INFO, "Not processing Pull request since the build is disabled");
-        } else if ("opened".equals(pr.getAction()) || "reopened".equals(pr.getAction())) {
-            GhprcPullRequest pull = pulls.get(pr.getNumber());
-            if (pull == null) {
-                pulls.putIfAbsent(pr.getNumber(), new GhprcPullRequest(pr.getPullRequest(), helper, this));
-                pull = pulls.get(pr.getNumber());
-            }
-            pull.check(pr.getPullRequest());
-        } else if ("synchronize".equals(pr.getAction())) {
-            GhprcPullRequest pull = pulls.get(pr.getNumber());
-            if (pull == null) {
-                pulls.putIfAbsent(pr.getNumber(), new GhprcPullRequest(pr.getPullRequest(), helper, this));
-                pull = pulls.get(pr.getNumber());
-            }
+        } else if ("opened".equals(event.getAction()) || "reopened".equals(event.getAction())
+                || "synchronize".equals(event.getAction())) {
+            GHPullRequest pr = event.getPullRequest(helper.getTrigger()).getPullRequest();
+            GhprcPullRequest pull = pulls.get(event.getNumber());
             if (pull == null) {
-                logger.log(Level.SEVERE, "Pull Request #{0} doesn''t exist", pr.getNumber());
-                return;
+                pulls.putIfAbsent(event.getNumber(), new GhprcPullRequest(pr, helper, this));
+                pull = pulls.get(event.getNumber());
             }
-            pull.check(pr.getPullRequest());
+            pull.check(pr);
         } else {
-            logger.log(Level.WARNING, "Unknown Pull Request hook action: {0}", pr.getAction());
+            logger.log(Level.WARNING, "Unknown Pull Request hook action: {0}", event.getAction());
         }
-        GhprcTrigger.getDscp().save();
+        GhprcTrigger.getDscp().savePullRequests(helper.getTrigger().getProject());
+    }
+
+    /**
+     * @return the number of polls of this repository since Jenkins started
+     */
+    public long getPollCount() {
+        return pollCount.get();
+    }
+
+    /**
+     * @return the duration of the last poll in milliseconds
+     */
+    public long getLastPollDuration() {
+        return lastPollDuration;
+    }
+
+    /**
+     * @return the duration of the longest poll in milliseconds
+     */
+    public long getMaxPollDuration() {
+        return maxPollDuration;
+    }
+
+    /**
+     * @return the average duration of a poll in milliseconds
+     */
+    public long getAveragePollDuration() {
+        long count = pollCount.get();
+        return count == 0 ? 0 : totalPollDuration.get() / count;
     }
 
     @VisibleForTesting
@@ -326,7 +787,7 @@ public class GhprcRepository {
 
     public GHRepository getGitHubRepo() {
         if (ghRepository == null) {
-            init();
+            initGhRepository();
         }
         return ghRepository;
     }
@@ -0,0 +1,201 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Minimal client for the few GitHub API calls github-api can't make efficiently, such as conditional
+ * requests or editing a comment known only by its id. Connections go through the Jenkins proxy the same
+ * way as github-api's, and every request is charged to the {@link GhprcRateLimitScheduler} of the
+ * credentials, which is updated from the rate limit headers of the response before it is returned.
+ */
+public class GhprcRestClient {
+    private final String apiUrl;
+    private final String authorization;
+    private final GhprcRateLimitScheduler rateLimit;
+
+    /**
+     * @param apiUrl the API endpoint, e.g. https://api.github.com
+     * @param authorization the Authorization header value, or null for anonymous requests
+     */
+    public GhprcRestClient(String apiUrl, String authorization) {
+        this(apiUrl, authorization, null);
+    }
+
+    /**
+     * @param apiUrl the API endpoint, e.g. https://api.github.com
+     * @param authorization the Authorization header value, or null for anonymous requests
+     * @param rateLimit charged for the requests and updated from the responses, may be null
+     */
+    public GhprcRestClient(String apiUrl, String authorization, GhprcRateLimitScheduler rateLimit) {
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        this.authorization = authorization;
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * Sends a GET request, conditional if validators of a previous response are given.
+     *
+     * @param path the path below the API endpoint, starting with a slash
+     * @param etag the ETag of the previous response, may be null
+     * @param lastModified the Last-Modified date of the previous response, may be null
+     * @return the response, without a body if the resource has not been modified
+     * @throws IOException if the request fails or GitHub answers with an error
+     */
+    public Response get(String path, String etag, String lastModified) throws IOException {
+        try {
+            return doGet(path, etag, lastModified);
+        } finally {
+            HttpConnectorWithJenkinsProxy.settle();
+        }
+    }
+
+    private Response doGet(String path, String etag, String lastModified) throws IOException {
+        HttpURLConnection connection = connect("GET", path);
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+
+        int status = connection.getResponseCode();
+        String body = null;
+        if (status == HttpURLConnection.HTTP_OK) {
+            InputStream is = connection.getInputStream();
+            try {
+                body = IOUtils.toString(is, "UTF-8");
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+        } else if (status != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            IOUtils.closeQuietly(connection.getErrorStream());
+            throw new IOException("GitHub answered " + status + " to GET " + path);
+        }
+        return new Response(status, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), body);
+    }
+
+    /**
+     * Sends a request with a JSON body. PATCH is sent as a POST with an X-HTTP-Method-Override header,
+     * which GitHub honours, because {@link HttpURLConnection} doesn't support it.
+     *
+     * @param method the HTTP method, e.g. POST or PATCH
+     * @param path the path below the API endpoint, starting with a slash
+     * @param json the request body
+     * @return the response
+     * @throws FileNotFoundException if the resource doesn't exist
+     * @throws ErrorResponseException if GitHub answers with another error
+     * @throws IOException if the request fails
+     */
+    public Response send(String method, String path, String json) throws IOException {
+        try {
+            return doSend(method, path, json);
+        } finally {
+            HttpConnectorWithJenkinsProxy.settle();
+        }
+    }
+
+    private Response doSend(String method, String path, String json) throws IOException {
+        HttpURLConnection connection;
+        if ("PATCH".equals(method)) {
+            connection = connect("POST", path);
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection = connect(method, path);
+        }
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        OutputStream os = connection.getOutputStream();
+        try {
+            os.write(json.getBytes("UTF-8"));
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+            IOUtils.closeQuietly(connection.getErrorStream());
+            throw new FileNotFoundException(method + " " + path);
+        }
+        if (status / 100 != 2) {
+            IOUtils.closeQuietly(connection.getErrorStream());
+            throw new ErrorResponseException(status, "GitHub answered " + status + " to " + method + " " + path);
+        }
+        InputStream is = connection.getInputStream();
+        try {
+            return new Response(status, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"),
+                    IOUtils.toString(is, "UTF-8"));
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private HttpURLConnection connect(String method, String path) throws IOException {
+        HttpURLConnection connection = new HttpConnectorWithJenkinsProxy(rateLimit).connect(new URL(apiUrl + path));
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    /**
+     * GitHub answered a request with an error other than 404.
+     */
+    public static class ErrorResponseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public ErrorResponseException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    public static class Response {
+        private final int status;
+        private final String etag;
+        private final String lastModified;
+        private final String body;
+
+        Response(int status, String etag, String lastModified, String body) {
+            this.status = status;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        public boolean isNotModified() {
+            return status == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
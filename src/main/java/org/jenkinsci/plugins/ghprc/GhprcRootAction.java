@@ -1,22 +1,16 @@
 package org.jenkinsci.plugins.ghprc;
 
 import hudson.Extension;
-import hudson.model.AbstractProject;
 import hudson.model.UnprotectedRootAction;
-import hudson.security.ACL;
 import hudson.security.csrf.CrumbExclusion;
-import jenkins.model.Jenkins;
 
-import org.acegisecurity.Authentication;
-import org.acegisecurity.context.SecurityContextHolder;
 import org.apache.commons.io.IOUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
+import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Level;
@@ -34,6 +28,7 @@ import javax.servlet.http.HttpServletRequest;
 public class GhprcRootAction implements UnprotectedRootAction {
     static final String URL = "ghprchook";
     private static final Logger logger = Logger.getLogger(GhprcRootAction.class.getName());
+    private static final byte[] PAYLOAD_PARAMETER = { 'p', 'a', 'y', 'l', 'o', 'a', 'd', '=' };
 
     public String getIconFileName() {
         return null;
@@ -50,29 +45,39 @@ public class GhprcRootAction implements UnprotectedRootAction {
     public void doIndex(StaplerRequest req, StaplerResponse resp) {
         String event = req.getHeader("X-GitHub-Event");
         String signature = req.getHeader("X-Hub-Signature");
+        String signature256 = req.getHeader("X-Hub-Signature-256");
         String type = req.getContentType();
-        String payload = null;
-        String body = null;
+        int maxSize = GhprcTrigger.getDscp().getWebHookMaxPayloadSize();
+
+        if (req.getContentLength() > maxSize) {
+            logger.log(Level.SEVERE, "Request body of {0} bytes is larger than the allowed {1} bytes",
+                    new Object[] { req.getContentLength(), maxSize });
+            setStatus(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+
+        byte[] payload = null;
+        byte[] body = null;
 
         if ("application/json".equals(type)) {
-            body = extractRequestBody(req);
+            body = extractRequestBody(req, maxSize, resp);
             if (body == null) {
                 logger.log(Level.SEVERE, "Can't get request body for application/json.");
                 return;
             }
             payload = body;
         } else if ("application/x-www-form-urlencoded".equals(type)) {
-            body = extractRequestBody(req);
-            if (body == null || body.length() <= 8) {
+            body = extractRequestBody(req, maxSize, resp);
+            if (body == null || body.length <= PAYLOAD_PARAMETER.length || !startsWith(body, PAYLOAD_PARAMETER)) {
                 logger.log(Level.SEVERE, "Request doesn't contain payload. "
                         + "You're sending url encoded request, so you should pass github payload through 'payload' request parameter");
                 return;
             }
             try {
-                String encoding = req.getCharacterEncoding();
-                payload = URLDecoder.decode(body.substring(8), encoding != null ? encoding : "UTF-8");
-            } catch (UnsupportedEncodingException e) {
+                payload = urlDecode(body, PAYLOAD_PARAMETER.length);
+            } catch (IllegalArgumentException e) {
                 logger.log(Level.SEVERE, "Error while trying to decode the payload");
+                setStatus(resp, HttpServletResponse.SC_BAD_REQUEST);
                 return;
             }
         }
@@ -84,52 +89,148 @@ public class GhprcRootAction implements UnprotectedRootAction {
             return;
         }
 
-        for (GhprcWebHook webHook : getWebHooks()) {
+        final GhprcWebHookEvent hookEvent;
+        try {
+            hookEvent = GhprcWebHookEvent.parse(event, payload);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to parse the web hook payload", e);
+            setStatus(resp, HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (hookEvent.getRepoName() == null) {
+            logger.log(Level.WARNING, "Payload doesn't contain a repository name, ignoring event {0}", event);
+            setStatus(resp, HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        Set<GhprcWebHook> webHooks = getWebHooks(hookEvent.getRepoName());
+        if (webHooks.isEmpty()) {
+            return;
+        }
+
+        // checked before queuing, so that unsigned deliveries can't fill the queue
+        final Set<GhprcWebHook> verified = verify(webHooks, new GhprcSignatureVerifier(body, signature, signature256));
+        if (verified.isEmpty()) {
+            logger.log(Level.WARNING, "No trigger of {0} accepts the signature of the delivery, ignoring event {1}",
+                    new Object[] { hookEvent.getRepoName(), event });
+            setStatus(resp, HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        boolean queued = GhprcWebHookQueue.get().offer(hookEvent.getRepoName(), new Runnable() {
+            public void run() {
+                handleWebHooks(verified, hookEvent);
+            }
+        });
+        setStatus(resp, queued ? HttpServletResponse.SC_ACCEPTED : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * @return the web hooks whose secret the delivery was signed with, the verifier is shared so that each
+     *         secret is checked once
+     */
+    private Set<GhprcWebHook> verify(Set<GhprcWebHook> webHooks, GhprcSignatureVerifier verifier) {
+        Set<GhprcWebHook> verified = new HashSet<GhprcWebHook>();
+        for (GhprcWebHook webHook : webHooks) {
+            if (webHook.checkSignature(verifier)) {
+                verified.add(webHook);
+            }
+        }
+        return verified;
+    }
+
+    private void handleWebHooks(Set<GhprcWebHook> webHooks, GhprcWebHookEvent hookEvent) {
+        for (GhprcWebHook webHook : webHooks) {
             try {
-                webHook.handleWebHook(event, payload, body, signature);
+                webHook.handleWebHook(hookEvent);
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "Unable to process web hook for: " + webHook.getProjectName(), e);
             }
         }
-        
     }
 
-    private String extractRequestBody(StaplerRequest req) {
-        String body = null;
-        BufferedReader br = null;
+    private void setStatus(StaplerResponse resp, int status) {
+        if (resp != null) {
+            resp.setStatus(status);
+        }
+    }
+
+    /**
+     * Reads the request body as raw bytes, giving up as soon as it grows past the maximum size.
+     * The same bytes are used for the signature check and, for JSON requests, for parsing.
+     */
+    private byte[] extractRequestBody(StaplerRequest req, int maxSize, StaplerResponse resp) {
+        InputStream is = null;
         try {
-            br = req.getReader();
-            body = IOUtils.toString(br);
+            is = req.getInputStream();
+            int length = req.getContentLength();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? length : 8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                if (out.size() + read > maxSize) {
+                    logger.log(Level.SEVERE, "Request body is larger than the allowed {0} bytes", maxSize);
+                    setStatus(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                    return null;
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
         } catch (IOException e) {
-            body = null;
+            return null;
         } finally {
-            IOUtils.closeQuietly(br);
+            IOUtils.closeQuietly(is);
         }
-        return body;
     }
 
-    
-    private Set<GhprcWebHook> getWebHooks() {
-        final Set<GhprcWebHook> webHooks = new HashSet<GhprcWebHook>();
-
-        // We need this to get access to list of repositories
-        Authentication old = SecurityContextHolder.getContext().getAuthentication();
-        SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+    private static boolean startsWith(byte[] body, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (body[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        try {
-            for (AbstractProject<?, ?> job : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
-                GhprcTrigger trigger = job.getTrigger(GhprcTrigger.class);
-                if (trigger == null || trigger.getWebHook() == null) {
-                    continue;
+    /**
+     * Decodes a form encoded value straight from the request bytes, stopping at the next parameter.
+     */
+    static byte[] urlDecode(byte[] body, int offset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length - offset);
+        for (int i = offset; i < body.length; i++) {
+            byte b = body[i];
+            if (b == '&') {
+                break;
+            } else if (b == '+') {
+                out.write(' ');
+            } else if (b == '%') {
+                if (i + 2 >= body.length) {
+                    throw new IllegalArgumentException("Incomplete escape sequence at the end of the payload");
                 }
-                webHooks.add(trigger.getWebHook());
+                int high = Character.digit(body[i + 1], 16);
+                int low = Character.digit(body[i + 2], 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Illegal escape sequence in the payload");
+                }
+                out.write((high << 4) + low);
+                i += 2;
+            } else {
+                out.write(b);
             }
-        } finally {
-            SecurityContextHolder.getContext().setAuthentication(old);
+        }
+        return out.toByteArray();
+    }
+
+    
+    private Set<GhprcWebHook> getWebHooks(String repoName) {
+        final Set<GhprcWebHook> webHooks = new HashSet<GhprcWebHook>();
+
+        for (GhprcTrigger trigger : GhprcTriggerRegistry.getTriggers(repoName)) {
+            webHooks.add(trigger.getWebHook());
         }
 
         if (webHooks.size() == 0) {
-            logger.log(Level.WARNING, "No projects found using GitHub pull request trigger");
+            logger.log(Level.WARNING, "No projects found using GitHub pull request trigger for repository {0}", repoName);
         }
 
         return webHooks;
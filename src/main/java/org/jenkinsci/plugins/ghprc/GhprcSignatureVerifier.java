@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Verifies the signature GitHub attaches to a web hook delivery.
+ * <p>
+ * One verifier is created per delivery and shared by all the triggers it is dispatched to, so each distinct
+ * secret is checked only once no matter how many jobs use it. The SHA-256 signature
+ * (<code>X-Hub-Signature-256</code>) is preferred over the SHA-1 one when GitHub sends both.
+ */
+public class GhprcSignatureVerifier {
+    private static final Logger logger = Logger.getLogger(GhprcSignatureVerifier.class.getName());
+
+    private static final String SHA1_PREFIX = "sha1=";
+    private static final String SHA256_PREFIX = "sha256=";
+
+    /**
+     * One Mac per algorithm, initialized with the secret it was last used with. Mac isn't thread safe, so
+     * each thread keeps its own.
+     */
+    private static final ThreadLocal<Map<String, KeyedMac>> macs = new ThreadLocal<Map<String, KeyedMac>>() {
+        @Override
+        protected Map<String, KeyedMac> initialValue() {
+            return new HashMap<String, KeyedMac>();
+        }
+    };
+
+    private final byte[] body;
+    private final String sha1Signature;
+    private final String sha256Signature;
+    private final Map<String, Boolean> results = new HashMap<String, Boolean>();
+
+    public GhprcSignatureVerifier(byte[] body, String sha1Signature, String sha256Signature) {
+        this.body = body;
+        this.sha1Signature = sha1Signature;
+        this.sha256Signature = sha256Signature;
+    }
+
+    /**
+     * Checks the delivery against a secret. Triggers without a secret accept every delivery.
+     *
+     * @param secret the secret configured for the hook
+     * @return true if the delivery was signed with that secret
+     */
+    public synchronized boolean verify(String secret) {
+        if (StringUtils.isEmpty(secret)) {
+            return true;
+        }
+        Boolean result = results.get(secret);
+        if (result == null) {
+            result = doVerify(secret);
+            results.put(secret, result);
+        }
+        return result;
+    }
+
+    private boolean doVerify(String secret) {
+        String algorithm;
+        String expected;
+        if (sha256Signature != null && sha256Signature.startsWith(SHA256_PREFIX)) {
+            algorithm = "HmacSHA256";
+            expected = sha256Signature.substring(SHA256_PREFIX.length());
+        } else if (sha1Signature != null && sha1Signature.startsWith(SHA1_PREFIX)) {
+            algorithm = "HmacSHA1";
+            expected = sha1Signature.substring(SHA1_PREFIX.length());
+        } else {
+            logger.log(Level.SEVERE, "Request doesn't contain a signature. Check that github has a secret that should be attached to the hook");
+            return false;
+        }
+
+        try {
+            byte[] localSignature = getMac(algorithm, secret).doFinal(body);
+            byte[] externalSignature = Hex.decodeHex(expected.toCharArray());
+            if (!MessageDigest.isEqual(localSignature, externalSignature)) {
+                logger.log(Level.SEVERE, "Local signature {0} does not match external signature {1}",
+                        new Object[] { Hex.encodeHexString(localSignature), expected });
+                return false;
+            }
+        } catch (DecoderException e) {
+            logger.log(Level.SEVERE, "External signature {0} isn't a hex string", expected);
+            return false;
+        } catch (GeneralSecurityException e) {
+            logger.log(Level.SEVERE, "Couldn't match both signatures", e);
+            return false;
+        }
+
+        logger.log(Level.INFO, "Signatures checking OK");
+        return true;
+    }
+
+    private static Mac getMac(String algorithm, String secret) throws GeneralSecurityException {
+        Map<String, KeyedMac> threadMacs = macs.get();
+        KeyedMac keyed = threadMacs.get(algorithm);
+        if (keyed == null) {
+            keyed = new KeyedMac(Mac.getInstance(algorithm));
+            threadMacs.put(algorithm, keyed);
+        }
+        if (!secret.equals(keyed.secret)) {
+            // a rotated secret replaces the previous one instead of piling up
+            try {
+                keyed.mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), algorithm));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            keyed.secret = secret;
+        }
+        return keyed.mac;
+    }
+
+    private static class KeyedMac {
+        private final Mac mac;
+        private String secret;
+
+        KeyedMac(Mac mac) {
+            this.mac = mac;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for the plugin's background workers, so they show up
+ * recognizably in thread dumps and never keep Jenkins from shutting down.
+ */
+public class GhprcThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public GhprcThreadFactory(String name) {
+        this.name = name;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "GHPRC " + name + " #" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -3,7 +3,6 @@ package org.jenkinsci.plugins.ghprc;
 import antlr.ANTLRException;
 import com.coravy.hudson.plugins.github.GithubProjectProperty;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Iterables;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractProject;
@@ -22,6 +21,7 @@ import hudson.util.DescribableList;
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatus;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtension;
@@ -35,12 +35,11 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -59,6 +58,7 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
     private Boolean autoCloseFailedPullRequests;
     private Boolean displayBuildErrorsOnDownstreamBuilds;
     private transient Ghprc helper;
+    private transient String configFingerprint;
     private String project;
     private AbstractProject<?, ?> _project;
     private String gitHubAuthId;
@@ -150,19 +150,25 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         logger.log(Level.INFO, "Starting the ghprc trigger for the {0} job; newInstance is {1}",
                 new String[] { this.project, String.valueOf(newInstance) });
         helper.init();
+        GhprcTriggerRegistry.register(this, helper.getRepository().getName());
     }
 
     Ghprc createGhprc(AbstractProject<?, ?> project) {
-        return new Ghprc(project, this, getDescriptor().getPullRequests(project.getFullName()));
+        String name = project.getFullName();
+        return new Ghprc(project, this, getDescriptor().getPullRequests(name), getDescriptor().getPollState(name));
     }
 
     @Override
     public void stop() {
         logger.log(Level.INFO, "Stopping the ghprc trigger for project {0}", this.project);
+        GhprcTriggerRegistry.unregister(this);
         if (helper != null) {
             helper.stop();
             helper = null;
         }
+        if (project != null) {
+            getDescriptor().flushPullRequests(getProject());
+        }
         super.stop();
     }
 
@@ -188,7 +194,7 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         logger.log(Level.INFO, "Running trigger for {0}", project);
         
         helper.run();
-        getDescriptor().save();
+        getDescriptor().savePullRequests(getProject());
     }
 
     public QueueTaskFuture<?> startJob(GhprcCause cause, GhprcRepository repo) {
@@ -212,16 +218,15 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         values.add(new StringParameterValue("ghprcOutputFile", getDescriptor().getOutputFile()));
 
         try {
-            values.add(new StringParameterValue("ghprcTargetCommit",
-                    repo.getGitHubRepo().getBranches().get(cause.getTargetBranch()).getSHA1()));
+            values.add(new StringParameterValue("ghprcTargetCommit", repo.getBranchHead(cause.getTargetBranch())));
         } catch (IOException e) {
-            logger.log(Level.SEVERE, "Unable to get branches from github repo", e);
+            logger.log(Level.SEVERE, "Unable to get the head of the target branch from github repo", e);
         }
 
         // add the previous pr BuildData as an action so that the correct change log is generated by the GitSCM plugin
         // note that this will be removed from the Actions list after the job is completed so that the old (and incorrect)
         // one isn't there
-        return this.job.scheduleBuild2(job.getQuietPeriod(), cause, new ParametersAction(values), findPreviousBuildForPullId(pullIdPv));
+        return this.job.scheduleBuild2(job.getQuietPeriod(), cause, new ParametersAction(values), findPreviousBuildForPullId(cause.getPullID()));
     }
     
     
@@ -282,19 +287,14 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
     /**
      * Find the previous BuildData for the given pull request number; this may return null
      */
-    private BuildData findPreviousBuildForPullId(StringParameterValue pullIdPv) {
+    private BuildData findPreviousBuildForPullId(int pullId) {
         // find the previous build for this particular pull request, it may not be the last build
-        for (Run<?, ?> r : job.getBuilds()) {
-            ParametersAction pa = r.getAction(ParametersAction.class);
-            if (pa != null) {
-                for (ParameterValue pv : pa.getParameters()) {
-                    if (pv.equals(pullIdPv)) {
-                        Iterables.getFirst(r.getActions(BuildData.class), null);
-                    }
-                }
-            }
+        GhprcPullRequest pull = getDescriptor().getPullRequests(job.getFullName()).get(pullId);
+        if (pull == null || pull.getLastBuildNumber() == 0) {
+            return null;
         }
-        return null;
+        Run<?, ?> r = job.getBuildByNumber(pull.getLastBuildNumber());
+        return r == null ? null : r.getAction(BuildData.class);
     }
 
     private ArrayList<ParameterValue> getDefaultParameters() {
@@ -318,8 +318,11 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         return cron;
     }
 
+    /**
+     * @return the full name of the job, following it when it is renamed
+     */
     public String getProject() {
-        return project;
+        return _project != null ? _project.getFullName() : project;
     }
 
     public Boolean getUseGitHubHooks() {
@@ -342,6 +345,23 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         return displayBuildErrorsOnDownstreamBuilds;
     }
 
+    /**
+     * Returns a digest of the settings that affect the builds of this trigger. Saving the job creates a new
+     * trigger, so the digest is computed once per configuration.
+     *
+     * @return the configuration digest
+     */
+    public String getConfigFingerprint() {
+        if (configFingerprint == null) {
+            StringBuilder config = new StringBuilder();
+            config.append(getBuildDescTemplate()).append('|').append(gitHubAuthId).append('|')
+                    .append(isAutoCloseFailedPullRequests()).append('|').append(isDisplayBuildErrorsOnDownstreamBuilds()).append('|')
+                    .append(Jenkins.XSTREAM2.toXML(getExtensions()));
+            configFingerprint = DigestUtils.md5Hex(config.toString());
+        }
+        return configFingerprint;
+    }
+
     public GhprcWebHook getWebHook() {
         GhprcWebHook webHook = new GhprcWebHook(this);
         return webHook;
@@ -389,6 +409,14 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         private GHCommitState unstableAs = GHCommitState.FAILURE;
         private Boolean autoCloseFailedPullRequests = false;
         private Boolean displayBuildErrorsOnDownstreamBuilds = false;
+        private Integer webHookWorkers = 4;
+        private Integer webHookQueueSize = 500;
+        private Integer webHookMaxPayloadSize = 5120;
+        private Integer pollConcurrency = 1;
+        private Integer saveInterval = 1000;
+        private Integer warmUpRate = 60;
+        private Integer outputFileMaxSize = 64;
+        private GhprcCommentDigest commentDigest = GhprcCommentDigest.MD5;
         
         private List<GhprcGitHubAuth> githubAuth;
         
@@ -418,8 +446,10 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
             return githubAuth;
         }
         
-        // map of jobs (by their fullName) and their map of pull requests
-        private Map<String, ConcurrentMap<Integer, GhprcPullRequest>> jobs;
+        // map of jobs (by their fullName) and their map of pull requests, now kept by the pull request store
+        @Deprecated
+        private transient Map<String, ConcurrentMap<Integer, GhprcPullRequest>> jobs;
+        private transient GhprcPullRequestStore pullRequestStore;
         
         public List<GhprcExtensionDescriptor> getExtensionDescriptors() {
             return GhprcExtensionDescriptor.allProject();
@@ -441,10 +471,30 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         public DescriptorImpl() {
             load();
             readBackFromLegacy();
+            migratePullRequests();
+//            save();
+        }
+
+        @SuppressWarnings("deprecation")
+        private void migratePullRequests() {
             if (jobs == null) {
-                jobs = new HashMap<String, ConcurrentMap<Integer, GhprcPullRequest>>();
+                return;
             }
-//            save();
+            for (Map.Entry<String, ConcurrentMap<Integer, GhprcPullRequest>> job : jobs.entrySet()) {
+                getPullRequestStore().migrate(job.getKey(), job.getValue());
+            }
+            jobs = null;
+            save();
+        }
+
+        /**
+         * @return the store of the pull request state of every job, along with its flush metrics
+         */
+        public synchronized GhprcPullRequestStore getPullRequestStore() {
+            if (pullRequestStore == null) {
+                pullRequestStore = new GhprcPullRequestStore(new File(Jenkins.getInstance().getRootDir(), "ghprc-pull-requests"));
+            }
+            return pullRequestStore;
         }
 
         @Override
@@ -472,6 +522,15 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
             return items;
         }
 
+        @SuppressWarnings("UnusedDeclaration")
+        public ListBoxModel doFillCommentDigestItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (GhprcCommentDigest digest : GhprcCommentDigest.values()) {
+                items.add(new ListBoxModel.Option(digest.getDisplayName(), digest.name(), digest == getCommentDigest()));
+            }
+            return items;
+        }
+
 
         @SuppressWarnings("UnusedDeclaration")
         public ListBoxModel doFillGitHubAuthIdItems(@QueryParameter("gitHubAuthId") String gitHubAuthId) {
@@ -496,8 +555,17 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
             unstableAs = GHCommitState.valueOf(formData.getString("unstableAs"));
             autoCloseFailedPullRequests = formData.getBoolean("autoCloseFailedPullRequests");
             displayBuildErrorsOnDownstreamBuilds = formData.getBoolean("displayBuildErrorsOnDownstreamBuilds");
+            webHookWorkers = formData.optInt("webHookWorkers", 4);
+            webHookQueueSize = formData.optInt("webHookQueueSize", 500);
+            webHookMaxPayloadSize = formData.optInt("webHookMaxPayloadSize", 5120);
+            pollConcurrency = formData.optInt("pollConcurrency", 1);
+            saveInterval = formData.optInt("saveInterval", 1000);
+            warmUpRate = formData.optInt("warmUpRate", 60);
+            outputFileMaxSize = formData.optInt("outputFileMaxSize", 64);
+            commentDigest = GhprcCommentDigest.valueOf(formData.optString("commentDigest", GhprcCommentDigest.MD5.name()));
             
             githubAuth = req.bindJSONToList(GhprcGitHubAuth.class, formData.get("githubAuth"));
+            GhprcConnectionCache.invalidateAll();
             
             extensions = new DescribableList<GhprcExtension, GhprcExtensionDescriptor>(Saveable.NOOP);
 
@@ -526,6 +594,59 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
             return displayBuildErrorsOnDownstreamBuilds;
         }
 
+        public int getWebHookWorkers() {
+            return webHookWorkers == null || webHookWorkers < 1 ? 4 : webHookWorkers;
+        }
+
+        public int getWebHookQueueSize() {
+            return webHookQueueSize == null || webHookQueueSize < 1 ? 500 : webHookQueueSize;
+        }
+
+        /**
+         * @return the largest accepted web hook request body, in bytes
+         */
+        public int getWebHookMaxPayloadSize() {
+            int kilobytes = webHookMaxPayloadSize == null || webHookMaxPayloadSize < 1 ? 5120 : webHookMaxPayloadSize;
+            return kilobytes * 1024;
+        }
+
+        /**
+         * @return the largest part of an output or comment file posted to GitHub, in bytes
+         */
+        public int getOutputFileMaxSize() {
+            int kilobytes = outputFileMaxSize == null || outputFileMaxSize < 1 ? 64 : outputFileMaxSize;
+            return kilobytes * 1024;
+        }
+
+        /**
+         * @return the number of pull requests of one repository checked at the same time when polling
+         */
+        public int getPollConcurrency() {
+            return pollConcurrency == null || pollConcurrency < 1 ? 1 : pollConcurrency;
+        }
+
+        /**
+         * @return how long in milliseconds pull request changes are collected before being written, 0 to write right away
+         */
+        public int getSaveInterval() {
+            return saveInterval == null || saveInterval < 0 ? 1000 : saveInterval;
+        }
+
+        /**
+         * @return how many repositories are resolved per minute in the background after their triggers start,
+         *         0 to resolve them on first use only
+         */
+        public int getWarmUpRate() {
+            return warmUpRate == null || warmUpRate < 0 ? 60 : warmUpRate;
+        }
+
+        /**
+         * @return the digest telling whether a build result comment changed
+         */
+        public GhprcCommentDigest getCommentDigest() {
+            return commentDigest == null ? GhprcCommentDigest.MD5 : commentDigest;
+        }
+
         public GHCommitState getUnstableAs() {
             return unstableAs;
         }
@@ -535,16 +656,60 @@ public class GhprcTrigger extends GhprcTriggerBackwardsCompatible {
         }
 
         public ConcurrentMap<Integer, GhprcPullRequest> getPullRequests(String projectName) {
-            ConcurrentMap<Integer, GhprcPullRequest> ret;
-            if (jobs.containsKey(projectName)) {
-                Map<Integer, GhprcPullRequest> map = jobs.get(projectName);
-                jobs.put(projectName, (ConcurrentMap<Integer, GhprcPullRequest>) map);
-                ret = (ConcurrentMap<Integer, GhprcPullRequest>) map;
-            } else {
-                ret = new ConcurrentHashMap<Integer, GhprcPullRequest>();
-                jobs.put(projectName, ret);
-            }
-            return ret;
+            return getPullRequestStore().get(projectName);
+        }
+
+        /**
+         * @param projectName the full name of the job
+         * @return what the last poll of the repository of the job left behind, saved with its pull requests
+         */
+        public GhprcPollState getPollState(String projectName) {
+            return getPullRequestStore().getPollState(projectName);
+        }
+
+        /**
+         * Saves the pull requests of a job, leaving the global configuration and the other jobs alone. The
+         * write happens at the end of the current save interval, together with the other saves requested in it.
+         *
+         * @param projectName the full name of the job
+         */
+        public void savePullRequests(String projectName) {
+            getPullRequestStore().scheduleSave(projectName, getSaveInterval());
+        }
+
+        /**
+         * Writes the pull requests of a job now if they have unsaved changes.
+         *
+         * @param projectName the full name of the job
+         */
+        public void flushPullRequests(String projectName) {
+            getPullRequestStore().save(projectName);
+        }
+
+        /**
+         * Deletes the pull requests of a deleted job.
+         *
+         * @param projectName the full name of the job
+         */
+        public void removePullRequests(String projectName) {
+            getPullRequestStore().remove(projectName);
+        }
+
+        /**
+         * Moves the pull requests of a renamed job to its new name.
+         *
+         * @param oldName the full name of the job before it was renamed
+         * @param newName the full name of the job now
+         */
+        public void renamePullRequests(String oldName, String newName) {
+            getPullRequestStore().rename(oldName, newName);
+        }
+
+        /**
+         * Writes every pending pull request change now.
+         */
+        public void flushPullRequests() {
+            getPullRequestStore().flush();
         }
 
         @Deprecated
@@ -0,0 +1,116 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Routing table from GitHub repository names to the started triggers watching them.
+ * <p>
+ * Triggers register themselves when they start and unregister when they stop, so an incoming
+ * web hook is dispatched with a single lookup instead of walking every item in Jenkins.
+ * Repository names are matched case insensitively, as GitHub does.
+ */
+public class GhprcTriggerRegistry {
+    private static final Logger logger = Logger.getLogger(GhprcTriggerRegistry.class.getName());
+
+    private static final ConcurrentMap<String, Set<GhprcTrigger>> triggersByRepo = new ConcurrentHashMap<String, Set<GhprcTrigger>>();
+    private static final ConcurrentMap<GhprcTrigger, String> repoByTrigger = new ConcurrentHashMap<GhprcTrigger, String>();
+
+    private GhprcTriggerRegistry() {}
+
+    static void register(GhprcTrigger trigger, String repoName) {
+        String key = toKey(repoName);
+        String previous = repoByTrigger.put(trigger, key);
+        if (previous != null && !previous.equals(key)) {
+            removeFromRepo(trigger, previous);
+        }
+
+        Set<GhprcTrigger> triggers = triggersByRepo.get(key);
+        if (triggers == null) {
+            triggersByRepo.putIfAbsent(key, Collections.newSetFromMap(new ConcurrentHashMap<GhprcTrigger, Boolean>()));
+            triggers = triggersByRepo.get(key);
+        }
+        triggers.add(trigger);
+        logger.log(Level.FINE, "Registered trigger for {0} on repository {1}", new Object[] { trigger.getProject(), key });
+    }
+
+    static void unregister(GhprcTrigger trigger) {
+        String key = repoByTrigger.remove(trigger);
+        if (key != null) {
+            removeFromRepo(trigger, key);
+            logger.log(Level.FINE, "Unregistered trigger for {0} from repository {1}", new Object[] { trigger.getProject(), key });
+        }
+    }
+
+    private static void removeFromRepo(GhprcTrigger trigger, String key) {
+        Set<GhprcTrigger> triggers = triggersByRepo.get(key);
+        if (triggers != null) {
+            triggers.remove(trigger);
+        }
+    }
+
+    /**
+     * Returns the triggers registered for the given repository, never null.
+     *
+     * @param repoName the repository full name, i.e. owner/repo
+     * @return the triggers watching that repository
+     */
+    public static Set<GhprcTrigger> getTriggers(String repoName) {
+        if (repoName == null) {
+            return Collections.emptySet();
+        }
+        Set<GhprcTrigger> triggers = triggersByRepo.get(toKey(repoName));
+        if (triggers == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(triggers);
+    }
+
+    private static String toKey(String repoName) {
+        return repoName.toLowerCase();
+    }
+
+    /**
+     * Drops triggers of deleted jobs; Jenkins does not always stop the triggers of a deleted job. The stored
+     * pull requests of a job follow it when it is deleted or renamed, a folder taking along the jobs in it.
+     */
+    @Extension
+    public static class GhprcTriggerRegistryItemListener extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof AbstractProject) {
+                GhprcTrigger trigger = Ghprc.extractTrigger((AbstractProject<?, ?>) item);
+                if (trigger != null) {
+                    unregister(trigger);
+                }
+            }
+            GhprcTrigger.DescriptorImpl descriptor = GhprcTrigger.getDscp();
+            for (Job<?, ?> job : item.getAllJobs()) {
+                descriptor.removePullRequests(job.getFullName());
+            }
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            String parent = item.getParent().getFullName();
+            String oldPrefix = parent.length() == 0 ? oldName : parent + "/" + oldName;
+            String newPrefix = item.getFullName();
+            GhprcTrigger.DescriptorImpl descriptor = GhprcTrigger.getDscp();
+            for (Job<?, ?> job : item.getAllJobs()) {
+                String newFullName = job.getFullName();
+                descriptor.renamePullRequests(oldPrefix + newFullName.substring(newPrefix.length()), newFullName);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.security.ACL;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
+
+/**
+ * Resolves repositories in the background after their triggers start, at a limited rate.
+ * <p>
+ * Starting a trigger doesn't talk to GitHub, so Jenkins starts quickly no matter how many jobs it has. The
+ * work is spread out instead: tasks are given evenly spaced slots, so starting thousands of jobs doesn't
+ * turn into a burst of API calls.
+ */
+public class GhprcWarmUp {
+    private static final Logger logger = Logger.getLogger(GhprcWarmUp.class.getName());
+
+    static final int DEFAULT_RATE = 60;
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new GhprcThreadFactory("warm-up"));
+
+    private static long nextSlot;
+
+    private GhprcWarmUp() {}
+
+    /**
+     * Runs a task, as the system user, in the next free slot.
+     *
+     * @param task the task
+     * @param ratePerMinute the number of tasks run per minute at most, the default rate if not positive
+     */
+    public static void schedule(final Runnable task, int ratePerMinute) {
+        long delay = reserveSlot(System.currentTimeMillis(), ratePerMinute);
+        executor.schedule(new Runnable() {
+            public void run() {
+                Authentication old = SecurityContextHolder.getContext().getAuthentication();
+                SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Warm-up task failed", e);
+                } finally {
+                    SecurityContextHolder.getContext().setAuthentication(old);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the delay until the reserved slot, in milliseconds
+     */
+    static synchronized long reserveSlot(long now, int ratePerMinute) {
+        long interval = TimeUnit.MINUTES.toMillis(1) / (ratePerMinute > 0 ? ratePerMinute : DEFAULT_RATE);
+        long slot = Math.max(now, nextSlot);
+        nextSlot = slot + interval;
+        return slot - now;
+    }
+}
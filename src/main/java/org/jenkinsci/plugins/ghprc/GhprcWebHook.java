@@ -1,20 +1,10 @@
 package org.jenkinsci.plugins.ghprc;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.lang.StringUtils;
-import org.kohsuke.github.GHEventPayload;
-import org.kohsuke.github.GHIssueState;
-import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GitHub;
-
 public class GhprcWebHook {
     private static final Logger logger = Logger.getLogger(GhprcWebHook.class.getName());
     
@@ -24,80 +14,62 @@ public class GhprcWebHook {
         this.trigger = trigger;
     }
     
-    public void handleWebHook(String event, String payload, String body, String signature) {
-        if (!checkSignature(body, signature, trigger.getGitHubApiAuth().getSecret())){
-            return;
-        }
+    /**
+     * @return true if the delivery was signed with the secret of the trigger, or if the trigger has none
+     */
+    public boolean checkSignature(GhprcSignatureVerifier verifier) {
+        return verifier.verify(trigger.getGitHubApiAuth().getSecret());
+    }
 
+    /**
+     * Handles a delivery whose signature was already checked, see {@link #checkSignature(GhprcSignatureVerifier)}.
+     */
+    public void handleWebHook(GhprcWebHookEvent event) {
         GhprcRepository repo = trigger.getRepository();
         String repoName = repo.getName();
 
-        logger.log(Level.INFO, "Got payload event: {0}", event);
-        try {
-            GitHub gh = trigger.getGitHub();
-            
-            if ("issue_comment".equals(event)) {
-                GHEventPayload.IssueComment issueComment = gh.parseEventPayload(
-                        new StringReader(payload), 
-                        GHEventPayload.IssueComment.class);
-                GHIssueState state = issueComment.getIssue().getState();
-                if (state == GHIssueState.CLOSED) {
-                    logger.log(Level.INFO, "Skip comment on closed PR");
-                }
-                
-            } else if ("pull_request".equals(event)) {
-                GHEventPayload.PullRequest pr = gh.parseEventPayload(
-                        new StringReader(payload), 
-                        GHEventPayload.PullRequest.class);
-                if (matchRepo(repo, pr.getPullRequest().getRepository())) {
-                    logger.log(Level.INFO, "Checking PR #{1} for {0}", new Object[] { repoName, pr.getNumber() });
-                    repo.onPullRequestHook(pr);
+        logger.log(Level.INFO, "Got payload event: {0}", event.getEvent());
+        if ("issue_comment".equals(event.getEvent())) {
+            if ("closed".equals(event.getIssueState())) {
+                logger.log(Level.INFO, "Skip comment on closed PR");
+            }
+
+        } else if ("pull_request".equals(event.getEvent())) {
+            if (matchRepo(repo, event.getRepoName())) {
+                logger.log(Level.INFO, "Checking PR #{1} for {0}", new Object[] { repoName, event.getNumber() });
+                try {
+                    repo.onPullRequestHook(event);
+                } catch (IOException ex) {
+                    logger.log(Level.SEVERE, "Failed to parse github hook payload for " + trigger.getProject(), ex);
                 }
-                
-            } else {
-                logger.log(Level.WARNING, "Request not known");
             }
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to parse github hook payload for " + trigger.getProject(), ex);
+
+        } else if ("push".equals(event.getEvent())) {
+            if (matchRepo(repo, event.getRepoName())) {
+                repo.onPushHook(event);
+            }
+
+        } else {
+            logger.log(Level.WARNING, "Request not known");
         }
     }
     
     public static boolean checkSignature(String body, String signature, String secret) {
-        if (StringUtils.isEmpty(secret)) {
-            return true;
-        }
-        
-        if (signature != null && signature.startsWith("sha1=")) {
-            String expected = signature.substring(5);
-            String algorithm = "HmacSHA1";
-            try {
-                SecretKeySpec keySpec = new SecretKeySpec(secret.getBytes(), algorithm);
-                Mac mac = Mac.getInstance(algorithm);
-                mac.init(keySpec);
-                byte[] localSignatureBytes = mac.doFinal(body.getBytes("UTF-8"));
-                String localSignature = Hex.encodeHexString(localSignatureBytes);
-                if (! localSignature.equals(expected)) {
-                    logger.log(Level.SEVERE, "Local signature {0} does not match external signature {1}",
-                            new Object[] {localSignature, expected});
-                    return false;
-                }
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Couldn't match both signatures");
-                return false;
-            }
-        } else {
-            logger.log(Level.SEVERE, "Request doesn't contain a signature. Check that github has a secret that should be attached to the hook");
+        try {
+            return checkSignature(body.getBytes("UTF-8"), signature, secret);
+        } catch (UnsupportedEncodingException e) {
+            logger.log(Level.SEVERE, "Couldn't match both signatures");
             return false;
         }
+    }
 
-        logger.log(Level.INFO, "Signatures checking OK");
-        return true;
+    public static boolean checkSignature(byte[] body, String signature, String secret) {
+        return new GhprcSignatureVerifier(body, signature, null).verify(secret);
     }
     
-    private boolean matchRepo(GhprcRepository ghprcRepo, GHRepository ghRepo) {
+    private boolean matchRepo(GhprcRepository ghprcRepo, String hookRepoName) {
         String jobRepoName = ghprcRepo.getName();
-        String hookRepoName = ghRepo.getFullName();
-        logger.log(Level.INFO, "Comparing repository names: {0} to {1}, case is ignored", new Object[]{jobRepoName, hookRepoName});
+        logger.log(Level.FINE, "Comparing repository names: {0} to {1}, case is ignored", new Object[]{jobRepoName, hookRepoName});
         return jobRepoName.equalsIgnoreCase(hookRepoName);
     }
 
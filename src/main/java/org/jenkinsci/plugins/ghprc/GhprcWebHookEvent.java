@@ -0,0 +1,175 @@
+package org.jenkinsci.plugins.ghprc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.github.GHEventPayload;
+import org.kohsuke.github.GitHub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import hudson.Util;
+
+/**
+ * A web hook delivery, parsed once when it is received and shared by every trigger watching the repository.
+ * <p>
+ * The fields needed for routing and change detection are read eagerly. The github-api payload object,
+ * which needs a {@link GitHub} connection to be wired up, is only built on demand and then reused by all
+ * the triggers that share the same GitHub auth.
+ */
+public final class GhprcWebHookEvent {
+    private static final Logger logger = Logger.getLogger(GhprcWebHookEvent.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String BRANCH_PREFIX = "refs/heads/";
+
+    private final String event;
+    private final byte[] payload;
+    private final String repoName;
+    private final String action;
+    private final int number;
+    private final String headSha;
+    private final Date updatedAt;
+    private final String issueState;
+    private final String branch;
+    private final String branchSha;
+
+    private final Map<String, GHEventPayload.PullRequest> pullRequests = new HashMap<String, GHEventPayload.PullRequest>();
+
+    private GhprcWebHookEvent(String event, byte[] payload, JsonNode root) {
+        this.event = event;
+        this.payload = payload;
+        this.repoName = Util.fixEmpty(root.path("repository").path("full_name").asText());
+        this.action = Util.fixEmpty(root.path("action").asText());
+
+        JsonNode pullRequest = root.path("pull_request");
+        JsonNode issue = root.path("issue");
+        if ("push".equals(event)) {
+            this.number = 0;
+            this.headSha = null;
+            this.updatedAt = null;
+            this.issueState = null;
+            String ref = root.path("ref").asText();
+            this.branch = ref.startsWith(BRANCH_PREFIX) ? ref.substring(BRANCH_PREFIX.length()) : null;
+            this.branchSha = root.path("deleted").asBoolean() ? null : Util.fixEmpty(root.path("after").asText());
+        } else if (!pullRequest.isMissingNode()) {
+            this.number = root.path("number").asInt(pullRequest.path("number").asInt());
+            this.headSha = Util.fixEmpty(pullRequest.path("head").path("sha").asText());
+            this.updatedAt = parseDate(pullRequest.path("updated_at").asText());
+            this.issueState = Util.fixEmpty(pullRequest.path("state").asText());
+            // the base sha of a pull request is the one it was opened or last pushed to against, not the branch head
+            this.branch = null;
+            this.branchSha = null;
+        } else {
+            this.number = issue.path("number").asInt();
+            this.headSha = null;
+            this.updatedAt = parseDate(issue.path("updated_at").asText());
+            this.issueState = Util.fixEmpty(issue.path("state").asText());
+            this.branch = null;
+            this.branchSha = null;
+        }
+    }
+
+    /**
+     * Parses a web hook payload.
+     *
+     * @param event the value of the X-GitHub-Event header
+     * @param payload the JSON payload, as received
+     * @return the parsed event
+     * @throws IOException if the payload isn't valid JSON
+     */
+    public static GhprcWebHookEvent parse(String event, byte[] payload) throws IOException {
+        return new GhprcWebHookEvent(event, payload, MAPPER.readTree(payload));
+    }
+
+    static Date parseDate(String date) {
+        if (Util.fixEmpty(date) == null) {
+            return null;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(date);
+        } catch (ParseException e) {
+            logger.log(Level.WARNING, "Unable to parse date {0} from payload", date);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the pull request payload wired to the trigger's GitHub connection. The payload is parsed
+     * at most once per GitHub auth, no matter how many triggers ask for it.
+     *
+     * @param trigger the trigger asking for the payload
+     * @return the pull request payload
+     * @throws IOException if the payload can't be parsed or no connection is available
+     */
+    public GHEventPayload.PullRequest getPullRequest(GhprcTrigger trigger) throws IOException {
+        GhprcGitHubAuth auth = trigger.getGitHubApiAuth();
+        String key = auth == null ? "" : auth.getId();
+        synchronized (pullRequests) {
+            GHEventPayload.PullRequest pr = pullRequests.get(key);
+            if (pr == null) {
+                GitHub gh = trigger.getGitHub();
+                if (gh == null) {
+                    throw new IOException("No GitHub connection available for " + trigger.getProject());
+                }
+                pr = gh.parseEventPayload(new InputStreamReader(new ByteArrayInputStream(payload), "UTF-8"),
+                        GHEventPayload.PullRequest.class);
+                pullRequests.put(key, pr);
+            }
+            return pr;
+        }
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public String getRepoName() {
+        return repoName;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getHeadSha() {
+        return headSha;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt == null ? null : new Date(updatedAt.getTime());
+    }
+
+    public String getIssueState() {
+        return issueState;
+    }
+
+    /**
+     * @return the branch pushed to, null for other events
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return the new head of a pushed branch, null if it was deleted or for other events
+     */
+    public String getBranchSha() {
+        return branchSha;
+    }
+}
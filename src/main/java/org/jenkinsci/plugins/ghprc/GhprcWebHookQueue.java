@@ -0,0 +1,228 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.security.ACL;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Bounded in-memory queue of web hook deliveries waiting to be processed.
+ * <p>
+ * Deliveries are spread over a fixed number of single threaded lanes by repository name, so all the
+ * events of a repository are handled in the order they were received while different repositories are
+ * processed in parallel. When the queue is full new deliveries are rejected right away rather than
+ * piling up; GitHub shows them as failed and they can be redelivered from the repository settings.
+ */
+public class GhprcWebHookQueue {
+    private static final Logger logger = Logger.getLogger(GhprcWebHookQueue.class.getName());
+
+    private static GhprcWebHookQueue instance;
+
+    private final int workers;
+    private final int capacity;
+    private final ExecutorService[] lanes;
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    GhprcWebHookQueue(int workers, int capacity) {
+        this(workers, capacity, null);
+    }
+
+    /**
+     * @param previous the queue replaced by this one, already shut down; its lanes are drained before any
+     *            delivery of this queue is processed, so deliveries of a repository stay in order
+     */
+    private GhprcWebHookQueue(int workers, int capacity, final GhprcWebHookQueue previous) {
+        this.workers = Math.max(1, workers);
+        this.capacity = Math.max(1, capacity);
+        this.lanes = new ExecutorService[this.workers];
+        for (int i = 0; i < this.workers; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(new GhprcThreadFactory("web hook worker"));
+            if (previous != null) {
+                lanes[i].execute(new Runnable() {
+                    public void run() {
+                        previous.awaitTermination();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns the queue matching the current global configuration, replacing the previous one if the
+     * number of workers or the capacity changed. A replaced queue still drains what it already accepted,
+     * and the new one starts processing once it is done.
+     *
+     * @return the web hook queue
+     */
+    public static synchronized GhprcWebHookQueue get() {
+        GhprcTrigger.DescriptorImpl descriptor = GhprcTrigger.getDscp();
+        int workers = descriptor.getWebHookWorkers();
+        int capacity = descriptor.getWebHookQueueSize();
+        if (instance == null || instance.workers != workers || instance.capacity != capacity) {
+            GhprcWebHookQueue previous = instance;
+            if (previous != null) {
+                previous.shutdown();
+            }
+            logger.log(Level.INFO, "Starting web hook queue with {0} workers and a capacity of {1}", new Object[] { workers, capacity });
+            instance = new GhprcWebHookQueue(workers, capacity, previous);
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a delivery for processing.
+     *
+     * @param repoName the repository the delivery is about, deliveries for one repository are processed in order
+     * @param task the processing of the delivery
+     * @return false if the queue is full and the delivery was dropped
+     */
+    public boolean offer(String repoName, final Runnable task) {
+        if (depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            rejected.incrementAndGet();
+            logger.log(Level.WARNING, "Web hook queue is full ({0} deliveries waiting), dropping delivery for {1}",
+                    new Object[] { capacity, repoName });
+            return false;
+        }
+
+        final long queuedAt = System.currentTimeMillis();
+        pending.incrementAndGet();
+        accepted.incrementAndGet();
+        try {
+            lanes[laneFor(repoName)].execute(new Runnable() {
+                public void run() {
+                    depth.decrementAndGet();
+                    recordLatency(System.currentTimeMillis() - queuedAt);
+
+                    // process the delivery the same way as a cron triggered poll
+                    Authentication old = SecurityContextHolder.getContext().getAuthentication();
+                    SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.SEVERE, "Unable to process web hook", e);
+                    } finally {
+                        SecurityContextHolder.getContext().setAuthentication(old);
+                        processed.incrementAndGet();
+                        pending.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            depth.decrementAndGet();
+            pending.decrementAndGet();
+            accepted.decrementAndGet();
+            rejected.incrementAndGet();
+            logger.log(Level.WARNING, "Web hook queue is shutting down, dropping delivery for {0}", repoName);
+            return false;
+        }
+        return true;
+    }
+
+    private int laneFor(String repoName) {
+        if (repoName == null) {
+            return 0;
+        }
+        return (repoName.toLowerCase().hashCode() & Integer.MAX_VALUE) % workers;
+    }
+
+    private void recordLatency(long latency) {
+        totalLatency.addAndGet(latency);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+        logger.log(Level.FINE, "Web hook waited {0}ms in the queue, {1} deliveries still waiting",
+                new Object[] { latency, depth.get() });
+    }
+
+    void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    private void awaitTermination() {
+        try {
+            for (ExecutorService lane : lanes) {
+                while (!lane.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.log(Level.INFO, "Waiting for the replaced web hook queue to drain");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @VisibleForTesting
+    boolean waitUntilIdle(long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (pending.get() > 0) {
+            if (System.currentTimeMillis() > end) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of deliveries waiting for a worker
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return the average time in milliseconds a delivery waited before a worker picked it up
+     */
+    public long getAverageLatency() {
+        long started = accepted.get() - depth.get();
+        return started <= 0 ? 0 : totalLatency.get() / started;
+    }
+
+    /**
+     * @return the longest time in milliseconds a delivery waited before a worker picked it up
+     */
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+}
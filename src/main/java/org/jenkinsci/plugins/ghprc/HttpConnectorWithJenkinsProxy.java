@@ -8,7 +8,56 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 
 public class HttpConnectorWithJenkinsProxy implements HttpConnector {
+    /**
+     * The last request sent by each thread, so the rate limit headers of its response can be read after
+     * github-api is done with it. Replaced by the next request and cleared by {@link #settle()}.
+     */
+    private static final ThreadLocal<SentRequest> lastRequest = new ThreadLocal<SentRequest>();
+
+    private final GhprcRateLimitScheduler rateLimit;
+
+    public HttpConnectorWithJenkinsProxy() {
+        this(null);
+    }
+
+    /**
+     * @param rateLimit charged for every request and updated from every response, may be null
+     */
+    public HttpConnectorWithJenkinsProxy(GhprcRateLimitScheduler rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
     public HttpURLConnection connect(URL url) throws IOException {
-        return (HttpURLConnection) ProxyConfiguration.open(url);
+        // a thread is done with a response before it sends its next request
+        settle();
+        HttpURLConnection connection = (HttpURLConnection) ProxyConfiguration.open(url);
+        if (rateLimit != null) {
+            rateLimit.charge();
+            lastRequest.set(new SentRequest(connection, rateLimit));
+        }
+        return connection;
+    }
+
+    /**
+     * Updates the rate limit from the response to the last request sent by the current thread, and forgets
+     * the request. Called in a finally block once a piece of GitHub work is done, so no thread holds on to
+     * a connection.
+     */
+    static void settle() {
+        SentRequest request = lastRequest.get();
+        if (request != null) {
+            lastRequest.remove();
+            request.rateLimit.update(request.connection);
+        }
+    }
+
+    private static class SentRequest {
+        private final HttpURLConnection connection;
+        private final GhprcRateLimitScheduler rateLimit;
+
+        SentRequest(HttpURLConnection connection, GhprcRateLimitScheduler rateLimit) {
+            this.connection = connection;
+            this.rateLimit = rateLimit;
+        }
     }
 }
@@ -5,6 +5,10 @@ import hudson.model.TaskListener;
 
 public interface GhprcCommentAppender {
 
+    /**
+     * @deprecated implement {@link GhprcContextCommentAppender} to share the environment of the build
+     */
+    @Deprecated
     public String postBuildComment(AbstractBuild<?, ?> build, TaskListener listener);
     
 }
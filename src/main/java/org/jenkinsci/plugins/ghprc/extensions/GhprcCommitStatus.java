@@ -10,7 +10,15 @@ import org.kohsuke.github.GHRepository;
 public interface GhprcCommitStatus {
     
     public void onBuildTriggered(GhprcTrigger trigger, GhprcPullRequest pr, GHRepository ghRepository) throws GhprcCommitStatusException;
+    /**
+     * @deprecated implement {@link GhprcContextCommitStatus} to share the environment of the build
+     */
+    @Deprecated
     public void onBuildStart(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) throws GhprcCommitStatusException;
+    /**
+     * @deprecated implement {@link GhprcContextCommitStatus} to share the environment of the build
+     */
+    @Deprecated
     public void onBuildComplete(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) throws GhprcCommitStatusException;
 
 }
@@ -0,0 +1,15 @@
+package org.jenkinsci.plugins.ghprc.extensions;
+
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
+
+/**
+ * A {@link GhprcCommentAppender} rendering its part of the comment with the {@link GhprcRenderContext} of the
+ * build phase, so the environment of the build is computed once for every extension. Comment appenders
+ * implementing only {@link GhprcCommentAppender} are still called with the build and its listener, see
+ * {@link GhprcRenderContext#postBuildComment(GhprcCommentAppender)}.
+ */
+public interface GhprcContextCommentAppender extends GhprcCommentAppender {
+
+    public String postBuildComment(GhprcRenderContext context);
+
+}
@@ -0,0 +1,17 @@
+package org.jenkinsci.plugins.ghprc.extensions;
+
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
+import org.kohsuke.github.GHRepository;
+
+/**
+ * A {@link GhprcCommitStatus} rendering its statuses with the {@link GhprcRenderContext} of the build phase,
+ * so the environment of the build is computed once for every extension. Commit statuses implementing only
+ * {@link GhprcCommitStatus} are still called with the build and its listener, see
+ * {@link GhprcRenderContext#onBuildStart(GhprcCommitStatus, GHRepository)}.
+ */
+public interface GhprcContextCommitStatus extends GhprcCommitStatus {
+
+    public void onBuildStart(GhprcRenderContext context, GHRepository repo) throws GhprcCommitStatusException;
+    public void onBuildComplete(GhprcRenderContext context, GHRepository repo) throws GhprcCommitStatusException;
+
+}
@@ -8,14 +8,16 @@ import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
 
 import org.jenkinsci.plugins.ghprc.Ghprc;
-import org.jenkinsci.plugins.ghprc.extensions.GhprcCommentAppender;
+import org.jenkinsci.plugins.ghprc.GhprcBuildLogTail;
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommentAppender;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtension;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtensionDescriptor;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcGlobalExtension;
 import org.kohsuke.github.GHCommitState;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-public class GhprcBuildLog extends GhprcExtension implements GhprcCommentAppender, GhprcGlobalExtension {
+public class GhprcBuildLog extends GhprcExtension implements GhprcContextCommentAppender, GhprcGlobalExtension {
 
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
@@ -31,10 +33,18 @@ public class GhprcBuildLog extends GhprcExtension implements GhprcCommentAppende
         return logExcerptLines == null ? 0 : logExcerptLines;
     }
 
+    /**
+     * @deprecated use {@link #postBuildComment(GhprcRenderContext)}
+     */
+    @Deprecated
     public String postBuildComment(AbstractBuild<?, ?> build, TaskListener listener) {
+        return postBuildComment(new GhprcRenderContext(build, listener));
+    }
+
+    public String postBuildComment(GhprcRenderContext context) {
         
         StringBuilder msg = new StringBuilder();
-        GHCommitState state = Ghprc.getState(build);
+        GHCommitState state = Ghprc.getState(context.getBuild());
 
         int numLines = getLogExcerptLines();
         
@@ -44,12 +54,13 @@ public class GhprcBuildLog extends GhprcExtension implements GhprcCommentAppende
                 // wrap log in "code" markdown
                 msg.append("\n\n**Build Log**\n*last ").append(numLines).append(" lines*\n");
                 msg.append("\n ```\n");
-                List<String> log = build.getLog(numLines);
+                List<String> log = GhprcBuildLogTail.read(context.getBuild(), numLines);
                 for (String line : log) {
                     msg.append(line).append('\n');
                 }
                 msg.append("```\n");
             } catch (IOException ex) {
+                TaskListener listener = context.getListener();
                 listener.getLogger().println("Can't add log excerpt to commit comments");
                 ex.printStackTrace(listener.getLogger());
             }
@@ -9,12 +9,13 @@ import hudson.util.ListBoxModel;
 
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.ghprc.Ghprc;
-import org.jenkinsci.plugins.ghprc.extensions.GhprcCommentAppender;
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommentAppender;
 import org.kohsuke.github.GHCommitState;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
-public class GhprcBuildResultMessage extends AbstractDescribableImpl<GhprcBuildResultMessage> implements GhprcCommentAppender {
+public class GhprcBuildResultMessage extends AbstractDescribableImpl<GhprcBuildResultMessage> implements GhprcContextCommentAppender {
 
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
@@ -36,17 +37,25 @@ public class GhprcBuildResultMessage extends AbstractDescribableImpl<GhprcBuildR
         return result;
     }
 
+    /**
+     * @deprecated use {@link #postBuildComment(GhprcRenderContext)}
+     */
+    @Deprecated
     public String postBuildComment(AbstractBuild<?, ?> build, TaskListener listener) {
+        return postBuildComment(new GhprcRenderContext(build, listener));
+    }
+
+    public String postBuildComment(GhprcRenderContext context) {
         StringBuilder msg = new StringBuilder();
 
-        GHCommitState state = Ghprc.getState(build);
+        GHCommitState state = Ghprc.getState(context.getBuild());
         String buildMessage = null;
         if (state == result) {
             buildMessage = message;
             if (StringUtils.isEmpty(buildMessage)) {
                 return "";
             }
-            String message = Ghprc.replaceMacros(build, listener, buildMessage);
+            String message = context.replaceMacros(buildMessage);
             // Only Append the build's custom message if it has been set.
             if (!StringUtils.isEmpty(message)) {
                 // When the msg is not empty, append a newline first, to seperate it from the rest of the String
@@ -7,15 +7,16 @@ import hudson.Extension;
 import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
 
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
 import org.jenkinsci.plugins.ghprc.GhprcTrigger;
-import org.jenkinsci.plugins.ghprc.extensions.GhprcCommentAppender;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommentAppender;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtension;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtensionDescriptor;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcGlobalExtension;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcProjectExtension;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-public class GhprcBuildStatus extends GhprcExtension implements GhprcCommentAppender, GhprcGlobalExtension, GhprcProjectExtension {
+public class GhprcBuildStatus extends GhprcExtension implements GhprcContextCommentAppender, GhprcGlobalExtension, GhprcProjectExtension {
     
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
@@ -32,11 +33,19 @@ public class GhprcBuildStatus extends GhprcExtension implements GhprcCommentAppe
     }
     
 
+    /**
+     * @deprecated use {@link #postBuildComment(GhprcRenderContext)}
+     */
+    @Deprecated
     public String postBuildComment(AbstractBuild<?, ?> build, TaskListener listener) {
+        return postBuildComment(new GhprcRenderContext(build, listener));
+    }
+
+    public String postBuildComment(GhprcRenderContext context) {
         StringBuilder msg = new StringBuilder();
         
         for (GhprcBuildResultMessage messager: messages) {
-            msg.append(messager.postBuildComment(build, listener));
+            msg.append(messager.postBuildComment(context));
         }
         
         return msg.toString();
@@ -1,21 +1,22 @@
 package org.jenkinsci.plugins.ghprc.extensions.comments;
 
-import java.io.File;
 import java.io.IOException;
 
 import hudson.Extension;
-import hudson.model.TaskListener;
+import hudson.FilePath;
 import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
 
-import org.apache.commons.io.FileUtils;
-import org.jenkinsci.plugins.ghprc.Ghprc;
-import org.jenkinsci.plugins.ghprc.extensions.GhprcCommentAppender;
+import org.jenkinsci.plugins.ghprc.GhprcOutputFile;
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
+import org.jenkinsci.plugins.ghprc.GhprcTrigger;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommentAppender;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtension;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtensionDescriptor;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcProjectExtension;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-public class GhprcCommentFile extends GhprcExtension implements GhprcCommentAppender, GhprcProjectExtension {
+public class GhprcCommentFile extends GhprcExtension implements GhprcContextCommentAppender, GhprcProjectExtension {
 
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
@@ -36,18 +37,38 @@ public class GhprcCommentFile extends GhprcExtension implements GhprcCommentAppe
         return false;
     }
 
+    /**
+     * @deprecated use {@link #postBuildComment(GhprcRenderContext)}
+     */
+    @Deprecated
     public String postBuildComment(AbstractBuild<?, ?> build, TaskListener listener) {
+        return postBuildComment(new GhprcRenderContext(build, listener));
+    }
+
+    public String postBuildComment(GhprcRenderContext context) {
         StringBuilder msg = new StringBuilder();
         if (commentFilePath != null && !commentFilePath.isEmpty()) {
             try {
-                String scriptFilePathResolved = Ghprc.replaceMacros(build, listener, commentFilePath);
+                String scriptFilePathResolved = context.replaceMacros(commentFilePath);
                 
-                String content = FileUtils.readFileToString(new File(scriptFilePathResolved));
+                FilePath workspace = context.getBuild().getWorkspace();
+                if (workspace == null) {
+                    context.getListener().getLogger().println("No workspace left, not reading comment file " + scriptFilePathResolved);
+                    return "";
+                }
+                int maxSize = GhprcTrigger.getDscp().getOutputFileMaxSize();
+                GhprcOutputFile.Content content = GhprcOutputFile.read(workspace.child(scriptFilePathResolved), maxSize, null);
                 msg.append("Build comment file: \n--------------\n");
-                msg.append(content);
+                msg.append(content.getText());
+                if (content.isTruncated()) {
+                    msg.append("\n(truncated to ").append(maxSize / 1024).append(" KB)");
+                }
                 msg.append("\n--------------\n");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (IOException e) {
                 msg.append("\n!!! Couldn't read commit file !!!\n");
+                TaskListener listener = context.getListener();
                 listener.getLogger().println("Couldn't read comment file");
                 e.printStackTrace(listener.getLogger());
             }
@@ -2,12 +2,13 @@ package org.jenkinsci.plugins.ghprc.extensions.comments;
 
 import hudson.Extension;
 import hudson.model.Result;
-import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
 
 import org.jenkinsci.plugins.ghprc.Ghprc;
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
 import org.jenkinsci.plugins.ghprc.GhprcTrigger;
-import org.jenkinsci.plugins.ghprc.extensions.GhprcCommentAppender;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommentAppender;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtension;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtensionDescriptor;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcGlobalExtension;
@@ -16,7 +17,7 @@ import org.jenkinsci.plugins.ghprc.manager.configuration.JobConfiguration;
 import org.jenkinsci.plugins.ghprc.manager.factory.GhprcBuildManagerFactoryUtil;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-public class GhprcPublishJenkinsUrl extends GhprcExtension implements GhprcCommentAppender, GhprcGlobalExtension {
+public class GhprcPublishJenkinsUrl extends GhprcExtension implements GhprcContextCommentAppender, GhprcGlobalExtension {
 
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
@@ -32,11 +33,19 @@ public class GhprcPublishJenkinsUrl extends GhprcExtension implements GhprcComme
         return publishedURL;
     }
 
+    /**
+     * @deprecated use {@link #postBuildComment(GhprcRenderContext)}
+     */
+    @Deprecated
     public String postBuildComment(AbstractBuild<?, ?> build, TaskListener listener) {
+        return postBuildComment(new GhprcRenderContext(build, listener));
+    }
+
+    public String postBuildComment(GhprcRenderContext context) {
         StringBuilder msg = new StringBuilder();
 
         msg.append("\nRefer to this link for build results (access rights to CI server needed): \n");
-        msg.append(generateCustomizedMessage(build));
+        msg.append(generateCustomizedMessage(context.getBuild()));
         msg.append("\n");
         
         return msg.toString();
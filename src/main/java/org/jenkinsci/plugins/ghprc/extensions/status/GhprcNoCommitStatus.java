@@ -1,12 +1,13 @@
 package org.jenkinsci.plugins.ghprc.extensions.status;
 
 import hudson.Extension;
-import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
 
 import org.jenkinsci.plugins.ghprc.GhprcPullRequest;
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
 import org.jenkinsci.plugins.ghprc.GhprcTrigger;
-import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatus;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommitStatus;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtension;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtensionDescriptor;
@@ -14,7 +15,7 @@ import org.jenkinsci.plugins.ghprc.extensions.GhprcProjectExtension;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-public class GhprcNoCommitStatus extends GhprcExtension implements GhprcCommitStatus, GhprcProjectExtension {
+public class GhprcNoCommitStatus extends GhprcExtension implements GhprcContextCommitStatus, GhprcProjectExtension {
     
 
     @Extension
@@ -29,11 +30,27 @@ public class GhprcNoCommitStatus extends GhprcExtension implements GhprcCommitSt
         
     }
 
+    /**
+     * @deprecated use {@link #onBuildStart(GhprcRenderContext, GHRepository)}
+     */
+    @Deprecated
     public void onBuildStart(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) throws GhprcCommitStatusException {
-        
+        onBuildStart(new GhprcRenderContext(build, listener), repo);
     }
 
+    /**
+     * @deprecated use {@link #onBuildComplete(GhprcRenderContext, GHRepository)}
+     */
+    @Deprecated
     public void onBuildComplete(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) throws GhprcCommitStatusException {
+        onBuildComplete(new GhprcRenderContext(build, listener), repo);
+    }
+
+    public void onBuildStart(GhprcRenderContext context, GHRepository repo) throws GhprcCommitStatusException {
+        
+    }
+
+    public void onBuildComplete(GhprcRenderContext context, GHRepository repo) throws GhprcCommitStatusException {
         
     }
 
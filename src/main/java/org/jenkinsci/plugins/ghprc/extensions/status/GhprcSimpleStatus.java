@@ -6,7 +6,6 @@ import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,9 +15,13 @@ import org.apache.commons.lang.StringUtils;
 
 import org.jenkinsci.plugins.ghprc.Ghprc;
 import org.jenkinsci.plugins.ghprc.GhprcCause;
+import org.jenkinsci.plugins.ghprc.GhprcCommitStatusPublisher;
 import org.jenkinsci.plugins.ghprc.GhprcPullRequest;
+import org.jenkinsci.plugins.ghprc.GhprcRateLimitScheduler;
+import org.jenkinsci.plugins.ghprc.GhprcRenderContext;
+import org.jenkinsci.plugins.ghprc.GhprcRepository;
 import org.jenkinsci.plugins.ghprc.GhprcTrigger;
-import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatus;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommitStatus;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtension;
 import org.jenkinsci.plugins.ghprc.extensions.GhprcExtensionDescriptor;
@@ -32,7 +35,7 @@ import org.kohsuke.github.GHCommitState;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-public class GhprcSimpleStatus extends GhprcExtension implements GhprcCommitStatus, GhprcGlobalExtension, GhprcProjectExtension {
+public class GhprcSimpleStatus extends GhprcExtension implements GhprcContextCommitStatus, GhprcGlobalExtension, GhprcProjectExtension {
 
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
@@ -86,7 +89,7 @@ public class GhprcSimpleStatus extends GhprcExtension implements GhprcCommitStat
         return completedStatus == null ? new ArrayList<GhprcBuildResultMessage>(0) : completedStatus;
     }
     
-    public void onBuildTriggered(GhprcTrigger trigger, GhprcPullRequest pr, GHRepository ghRepository) throws GhprcCommitStatusException {
+    public void onBuildTriggered(GhprcTrigger trigger, GhprcPullRequest pr, GHRepository ghRepository) {
         StringBuilder sb = new StringBuilder();
         GHCommitState state = GHCommitState.PENDING;
         
@@ -109,27 +112,40 @@ public class GhprcSimpleStatus extends GhprcExtension implements GhprcCommitStat
         String url = Ghprc.replaceMacros(project, statusUrl);
 
         String message = sb.toString();
-        try {
-            ghRepository.createCommitStatus(pr.getHead(), state, url, message, context);
-        } catch (IOException e) {
-            throw new GhprcCommitStatusException(e, state, message, pr.getId());
-        }
+        GhprcCommitStatusPublisher.get().publish(ghRepository, getRateLimitScheduler(trigger), pr.getHead(), state, url, message, context,
+                pr.getId(), reportFailure(trigger, null, null));
+    }
+
+    /**
+     * @deprecated use {@link #onBuildStart(GhprcRenderContext, GHRepository)}
+     */
+    @Deprecated
+    public void onBuildStart(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) {
+        onBuildStart(new GhprcRenderContext(build, listener), repo);
     }
 
-    public void onBuildStart(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) throws GhprcCommitStatusException {
-        GhprcCause c = Ghprc.getCause(build);
+    /**
+     * @deprecated use {@link #onBuildComplete(GhprcRenderContext, GHRepository)}
+     */
+    @Deprecated
+    public void onBuildComplete(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) {
+        onBuildComplete(new GhprcRenderContext(build, listener), repo);
+    }
+
+    public void onBuildStart(GhprcRenderContext context, GHRepository repo) {
+        GhprcCause c = Ghprc.getCause(context.getBuild());
         StringBuilder sb = new StringBuilder();
         if (StringUtils.isEmpty(startedStatus)) {
             sb.append("Build started");
             sb.append(c.isMerged() ? " sha1 is merged." : " sha1 is original commit.");
         } else {
-            sb.append(Ghprc.replaceMacros(build, listener, startedStatus));
+            sb.append(context.replaceMacros(startedStatus));
         }
-        createCommitStatus(build, listener, sb.toString(), repo, GHCommitState.PENDING);
+        createCommitStatus(context, sb.toString(), repo, GHCommitState.PENDING);
     }
 
-    public void onBuildComplete(AbstractBuild<?, ?> build, TaskListener listener, GHRepository repo) throws GhprcCommitStatusException {
-        
+    public void onBuildComplete(GhprcRenderContext context, GHRepository repo) {
+        AbstractBuild<?, ?> build = context.getBuild();
         GHCommitState state = Ghprc.getState(build);
 
         StringBuilder sb = new StringBuilder();
@@ -138,14 +154,14 @@ public class GhprcSimpleStatus extends GhprcExtension implements GhprcCommitStat
             sb.append("Build finished.");
         } else {
             for (GhprcBuildResultMessage buildStatus : completedStatus) {
-                sb.append(buildStatus.postBuildComment(build, listener));
+                sb.append(buildStatus.postBuildComment(context));
             }
         }
         
         sb.append(" ");
         GhprcTrigger trigger = Ghprc.extractTrigger(build);
         if (trigger == null) {
-            listener.getLogger().println("Unable to get pull request builder trigger!!");
+            context.getListener().getLogger().println("Unable to get pull request builder trigger!!");
         } else {
             JobConfiguration jobConfiguration =
                 JobConfiguration.builder()
@@ -157,29 +173,49 @@ public class GhprcSimpleStatus extends GhprcExtension implements GhprcCommitStat
             sb.append(buildManager.getOneLineTestResults());
         }
         
-        createCommitStatus(build, listener, sb.toString(), repo, state);
+        createCommitStatus(context, sb.toString(), repo, state);
     }
 
-    private void createCommitStatus(AbstractBuild<?, ?> build, TaskListener listener, String message, GHRepository repo, GHCommitState state) throws GhprcCommitStatusException {
+    private void createCommitStatus(GhprcRenderContext renderContext, String message, GHRepository repo, GHCommitState state) {
+        AbstractBuild<?, ?> build = renderContext.getBuild();
+        TaskListener listener = renderContext.getListener();
         GhprcCause cause = Ghprc.getCause(build);
         
         String sha1 = cause.getCommit();
         String url = Jenkins.getInstance().getRootUrl() + build.getUrl();
         if (!StringUtils.isEmpty(statusUrl)) {
-            url = Ghprc.replaceMacros(build, listener, statusUrl);
+            url = renderContext.replaceMacros(statusUrl);
         }
         String context = Util.fixEmpty(commitStatusContext);
-        context = Ghprc.replaceMacros(build, listener, context);
+        context = renderContext.replaceMacros(context);
         
         listener.getLogger().println(String.format("Setting status of %s to %s with url %s and message: '%s'", sha1, state, url, message));
         if (context != null) {
             listener.getLogger().println(String.format("Using context: " + context));
         }
-        try {
-            repo.createCommitStatus(sha1, state, url, message, context);
-        } catch (IOException e) {
-            throw new GhprcCommitStatusException(e, state, message, cause.getPullID());
-        }
+        // posted in the background, failures are retried and then reported in the build log
+        GhprcTrigger trigger = Ghprc.extractTrigger(build);
+        GhprcCommitStatusPublisher.get().publish(repo, getRateLimitScheduler(trigger), sha1, state, url, message, context,
+                cause.getPullID(), reportFailure(trigger, build, listener));
+    }
+
+    /**
+     * @return a listener reporting a status that couldn't be posted as a synchronous failure was
+     */
+    private static GhprcCommitStatusPublisher.FailureListener reportFailure(final GhprcTrigger trigger, final AbstractBuild<?, ?> build,
+            final TaskListener listener) {
+        return new GhprcCommitStatusPublisher.FailureListener() {
+            public void onFailure(GhprcCommitStatusException e) {
+                GhprcRepository repository = trigger == null ? null : trigger.getRepository();
+                if (repository != null) {
+                    repository.commentOnFailure(build, listener, e);
+                }
+            }
+        };
+    }
+
+    private static GhprcRateLimitScheduler getRateLimitScheduler(GhprcTrigger trigger) {
+        return trigger == null ? null : GhprcRateLimitScheduler.get(trigger.getGitHubApiAuth());
     }
 
     @Override
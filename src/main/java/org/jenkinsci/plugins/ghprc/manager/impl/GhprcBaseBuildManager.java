@@ -18,6 +18,7 @@ import hudson.tasks.junit.CaseResult;
 import hudson.tasks.test.AggregatedTestResultAction;
 import hudson.tasks.test.AggregatedTestResultAction.ChildReport;
 
+import org.jenkinsci.plugins.ghprc.GhprcBuildLogTail;
 import org.jenkinsci.plugins.ghprc.manager.configuration.JobConfiguration;
 import org.jenkinsci.plugins.ghprc.manager.GhprcBuildManager;
 
@@ -92,7 +93,7 @@ public abstract class GhprcBaseBuildManager implements GhprcBuildManager {
             sb.append("</span></h2>");
 
             try {
-                List<String> buildLog = build.getLog(_MAX_LINES_COUNT);
+                List<String> buildLog = GhprcBuildLogTail.read(build, _MAX_LINES_COUNT);
 
                 for (String buildLogLine : buildLog) {
                     sb.append(buildLogLine);
@@ -19,9 +19,33 @@ f.section(title: descriptor.displayName) {
     f.entry(field: "displayBuildErrorsOnDownstreamBuilds", title: _("Display build errors on downstream builds?")) {
       f.checkbox() 
     }
+    f.entry(field: "outputFileMaxSize", title: _("Maximum output file size posted (KB)")) {
+      f.textbox(default: "64") 
+    }
+    f.entry(field: "commentDigest", title: _("Comment digest")) {
+      f.select() 
+    }
     f.entry(field: "cron", title: _("Crontab line"), help: "/descriptor/hudson.triggers.TimerTrigger/help/spec") {
       f.textbox(default: "H/5 * * * *", checkUrl: "'descriptorByName/hudson.triggers.TimerTrigger/checkSpec?value=' + encodeURIComponent(this.value)") 
     }
+    f.entry(field: "pollConcurrency", title: _("Pull requests checked in parallel per repository")) {
+      f.textbox(default: "1") 
+    }
+    f.entry(field: "warmUpRate", title: _("Repositories warmed up per minute")) {
+      f.textbox(default: "60") 
+    }
+    f.entry(field: "saveInterval", title: _("Pull request state save interval (ms)")) {
+      f.textbox(default: "1000") 
+    }
+    f.entry(field: "webHookWorkers", title: _("Web hook workers")) {
+      f.textbox(default: "4") 
+    }
+    f.entry(field: "webHookQueueSize", title: _("Web hook queue size")) {
+      f.textbox(default: "500") 
+    }
+    f.entry(field: "webHookMaxPayloadSize", title: _("Maximum web hook payload size (KB)")) {
+      f.textbox(default: "5120") 
+    }
   }
   f.entry(title: _("Application Setup")) {
     f.hetero_list(items: descriptor.extensions, name: "extensions", oneEach: "true", hasHeader: "true", descriptors: descriptor.getGlobalExtensionDescriptors()) 
@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link GhprcBranchHeads}.
+ */
+public class GhprcBranchHeadsTest {
+
+    @Test
+    public void testHeadsExpire() {
+        GhprcBranchHeads heads = new GhprcBranchHeads();
+        heads.put("master", "sha1", 1000);
+
+        assertThat(heads.get("master", 1000 + GhprcBranchHeads.TTL)).isEqualTo("sha1");
+        assertThat(heads.get("master", 1001 + GhprcBranchHeads.TTL)).isNull();
+        assertThat(heads.get("other", 1000)).isNull();
+    }
+
+    @Test
+    public void testPushReplacesHead() {
+        GhprcBranchHeads heads = new GhprcBranchHeads();
+        heads.put("master", "fetched", 1000);
+        heads.put("master", "pushed", 2000);
+
+        assertThat(heads.get("master", 2000)).isEqualTo("pushed");
+
+        heads.remove("master");
+        assertThat(heads.get("master", 2000)).isNull();
+    }
+}
@@ -0,0 +1,98 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import hudson.console.ConsoleNote;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link GhprcBuildLogTail}.
+ */
+public class GhprcBuildLogTailTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testShortLogIsReadWhole() throws Exception {
+        List<String> lines = GhprcBuildLogTail.read(plain("log", "one\ntwo\n"), UTF8, 5, 1024);
+
+        assertThat(lines).containsExactly("one", "two");
+    }
+
+    @Test
+    public void testLastLinesOfLongLog() throws Exception {
+        File log = plain("log", numbered(10000));
+
+        List<String> lines = GhprcBuildLogTail.read(log, UTF8, 3, 1024);
+
+        assertThat(lines).containsExactly(GhprcBuildLogTail.TRUNCATED, "line 9998", "line 9999");
+    }
+
+    @Test
+    public void testByteLimit() throws Exception {
+        File log = plain("log", numbered(100));
+
+        List<String> lines = GhprcBuildLogTail.read(log, UTF8, 50, 30);
+
+        // 30 bytes hold three whole lines and the end of a fourth
+        assertThat(lines).containsExactly(GhprcBuildLogTail.TRUNCATED, "line 98", "line 99");
+    }
+
+    @Test
+    public void testConsoleNotesAreRemoved() throws Exception {
+        String note = ConsoleNote.PREAMBLE_STR + "AAAA" + ConsoleNote.POSTAMBLE_STR;
+
+        List<String> lines = GhprcBuildLogTail.read(plain("log", "one\n" + note + "two\r\n"), UTF8, 5, 1024);
+
+        assertThat(lines).containsExactly("one", "two");
+    }
+
+    @Test
+    public void testCompressedLog() throws Exception {
+        File log = folder.newFile("log.gz");
+        OutputStream os = new GZIPOutputStream(new FileOutputStream(log));
+        try {
+            IOUtils.write(numbered(10000), os, "UTF-8");
+        } finally {
+            os.close();
+        }
+
+        List<String> lines = GhprcBuildLogTail.read(log, UTF8, 3, 1024);
+
+        assertThat(lines).containsExactly(GhprcBuildLogTail.TRUNCATED, "line 9998", "line 9999");
+    }
+
+    @Test
+    public void testMissingLog() throws Exception {
+        assertThat(GhprcBuildLogTail.read(new File(folder.getRoot(), "log"), UTF8, 5, 1024)).isEmpty();
+    }
+
+    private File plain(String name, String content) throws Exception {
+        File log = folder.newFile(name);
+        FileUtils.writeStringToFile(log, content, "UTF-8");
+        return log;
+    }
+
+    private static String numbered(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link GhprcCheckExecutor}.
+ */
+public class GhprcCheckExecutorTest {
+
+    @Test
+    public void testRunsAllChecksWithinConcurrency() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 20; i++) {
+            checks.add(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    done.incrementAndGet();
+                    return true;
+                }
+            });
+        }
+
+        assertThat(GhprcCheckExecutor.runAll(checks, 3)).isTrue();
+        assertThat(done.get()).isEqualTo(20);
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    public void testFailureSkipsRemainingChecks() {
+        final AtomicInteger done = new AtomicInteger();
+        List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>();
+        checks.add(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                throw new IllegalStateException("failed");
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            checks.add(new Callable<Boolean>() {
+                public Boolean call() {
+                    done.incrementAndGet();
+                    return true;
+                }
+            });
+        }
+
+        assertThat(GhprcCheckExecutor.runAll(checks, 1)).isFalse();
+        assertThat(done.get()).isEqualTo(0);
+    }
+}
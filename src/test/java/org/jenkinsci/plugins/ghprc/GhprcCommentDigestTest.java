@@ -0,0 +1,28 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link GhprcCommentDigest}.
+ */
+public class GhprcCommentDigestTest {
+
+    @Test
+    public void testMd5MatchesEarlierSignatures() {
+        assertThat(GhprcCommentDigest.MD5.digest("abc")).isEqualTo("900150983cd24fb0d6963f7d28e17f72");
+    }
+
+    @Test
+    public void testSha256() {
+        assertThat(GhprcCommentDigest.SHA256.digest("abc")).isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+
+    @Test
+    public void testMurmur3IsStable() {
+        String digest = GhprcCommentDigest.MURMUR3.digest("Build finished.");
+        assertThat(digest).hasSize(32).isEqualTo(GhprcCommentDigest.MURMUR3.digest("Build finished."));
+        assertThat(digest).isNotEqualTo(GhprcCommentDigest.MURMUR3.digest("Build finished!"));
+    }
+}
@@ -0,0 +1,112 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kohsuke.github.GHCommitState;
+import org.kohsuke.github.GHRepository;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * Unit test for {@link GhprcCommitStatusPublisher}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class GhprcCommitStatusPublisherTest {
+
+    @Mock
+    private GHRepository repo;
+
+    private ScheduledExecutorService executor;
+    private GhprcCommitStatusPublisher publisher;
+    private String key;
+
+    @Before
+    public void setUp() {
+        given(repo.getFullName()).willReturn("user/repo");
+        // nothing runs on its own, the test sends the queued statuses
+        executor = mock(ScheduledExecutorService.class);
+        publisher = new GhprcCommitStatusPublisher(executor);
+        key = GhprcCommitStatusPublisher.key(repo, "sha", "ctx");
+    }
+
+    @Test
+    public void testOnlyLatestQueuedStatusIsPosted() throws IOException {
+        publisher.publish(repo, null, "sha", GHCommitState.PENDING, null, "Build triggered.", "ctx");
+        publisher.publish(repo, null, "sha", GHCommitState.PENDING, null, "Build started", "ctx");
+        publisher.publish(repo, null, "sha", GHCommitState.SUCCESS, null, "Build finished.", "ctx");
+
+        publisher.send(key, 0);
+
+        verify(repo, times(1)).createCommitStatus(anyString(), any(GHCommitState.class), anyString(), anyString(), anyString());
+        verify(repo).createCommitStatus("sha", GHCommitState.SUCCESS, null, "Build finished.", "ctx");
+        verify(executor, times(1)).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAcknowledgedStatusIsNotPostedAgain() throws IOException {
+        publisher.publish(repo, null, "sha", GHCommitState.SUCCESS, null, "Build finished.", "ctx");
+        publisher.send(key, 0);
+
+        publisher.publish(repo, null, "sha", GHCommitState.SUCCESS, null, "Build finished.", "ctx");
+        publisher.send(key, 0);
+
+        verify(repo, times(1)).createCommitStatus("sha", GHCommitState.SUCCESS, null, "Build finished.", "ctx");
+    }
+
+    @Test
+    public void testFailedPostIsRetried() throws IOException {
+        given(repo.createCommitStatus("sha", GHCommitState.FAILURE, null, "Build finished.", "ctx")).willThrow(new IOException("down"));
+
+        publisher.publish(repo, null, "sha", GHCommitState.FAILURE, null, "Build finished.", "ctx");
+        publisher.send(key, 0);
+
+        verify(executor).schedule(any(Runnable.class), eq(GhprcCommitStatusPublisher.RETRY_DELAYS[0]), eq(TimeUnit.SECONDS));
+
+        publisher.send(key, GhprcCommitStatusPublisher.RETRY_DELAYS.length);
+        publisher.send(key, 0);
+
+        // given up after the last retry, the status is no longer queued
+        verify(repo, times(2)).createCommitStatus("sha", GHCommitState.FAILURE, null, "Build finished.", "ctx");
+        verify(executor, never()).schedule(any(Runnable.class), eq(GhprcCommitStatusPublisher.RETRY_DELAYS[1]), eq(TimeUnit.SECONDS));
+        verify(executor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testFailureReportedOnceRetriesRunOut() throws IOException {
+        FileNotFoundException notFound = new FileNotFoundException("no access");
+        given(repo.createCommitStatus("sha", GHCommitState.FAILURE, null, "Build finished.", "ctx")).willThrow(notFound);
+        GhprcCommitStatusPublisher.FailureListener failureListener = mock(GhprcCommitStatusPublisher.FailureListener.class);
+
+        publisher.publish(repo, null, "sha", GHCommitState.FAILURE, null, "Build finished.", "ctx", 7, failureListener);
+        publisher.send(key, 0);
+        verify(failureListener, never()).onFailure(any(GhprcCommitStatusException.class));
+
+        publisher.send(key, GhprcCommitStatusPublisher.RETRY_DELAYS.length);
+
+        ArgumentCaptor<GhprcCommitStatusException> failure = ArgumentCaptor.forClass(GhprcCommitStatusException.class);
+        verify(failureListener, times(1)).onFailure(failure.capture());
+        assertThat(failure.getValue().getException()).isSameAs(notFound);
+        assertThat(failure.getValue().getState()).isEqualTo(GHCommitState.FAILURE);
+        assertThat(failure.getValue().getMessage()).isEqualTo("Build finished.");
+        assertThat(failure.getValue().getId()).isEqualTo(7);
+    }
+}
@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.model.Item;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kohsuke.github.GitHub;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+/**
+ * Unit tests for {@link GhprcConnectionCache}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class GhprcConnectionCacheTest {
+
+    @Mock
+    private GitHub gitHub;
+    @Mock
+    private Item item;
+
+    @After
+    public void tearDown() {
+        GhprcConnectionCache.invalidateAll();
+    }
+
+    @Test
+    public void testKeyDependsOnAuthAndContext() {
+        GhprcGitHubAuth auth = new GhprcGitHubAuth("https://api.github.com", "creds", "", "auth", null);
+        GhprcGitHubAuth otherCredentials = new GhprcGitHubAuth("https://api.github.com", "other", "", "auth", null);
+        given(item.getFullName()).willReturn("folder/job");
+
+        // jobs using the global credentials share a connection
+        assertThat(GhprcConnectionCache.key(auth, item, false)).isEqualTo(GhprcConnectionCache.key(auth, null, false));
+        assertThat(GhprcConnectionCache.key(auth, item, true)).isNotEqualTo(GhprcConnectionCache.key(auth, null, false));
+        assertThat(GhprcConnectionCache.key(auth, null, false)).isNotEqualTo(GhprcConnectionCache.key(otherCredentials, null, false));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        long hits = GhprcConnectionCache.getHits();
+        long misses = GhprcConnectionCache.getMisses();
+
+        assertThat(GhprcConnectionCache.get("key")).isNull();
+        GhprcConnectionCache.put("key", gitHub);
+        assertThat(GhprcConnectionCache.get("key")).isSameAs(gitHub);
+
+        assertThat(GhprcConnectionCache.getHits()).isEqualTo(hits + 1);
+        assertThat(GhprcConnectionCache.getMisses()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    public void testBoundedAndInvalidated() {
+        for (int i = 0; i <= GhprcConnectionCache.MAX_SIZE; i++) {
+            GhprcConnectionCache.put("key" + i, gitHub);
+        }
+        assertThat(GhprcConnectionCache.size()).isEqualTo(GhprcConnectionCache.MAX_SIZE);
+        assertThat(GhprcConnectionCache.get("key0")).isNull();
+
+        GhprcConnectionCache.invalidateAll();
+        assertThat(GhprcConnectionCache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBotLoginDroppedWithItsConnection() {
+        GhprcConnectionCache.put("key0", gitHub);
+        GhprcConnectionCache.putBotLogin("key0", "bot");
+        GhprcConnectionCache.putBotLogin("uncached", "bot");
+        assertThat(GhprcConnectionCache.getBotLogin("key0")).isEqualTo("bot");
+        assertThat(GhprcConnectionCache.getBotLogin("uncached")).isNull();
+
+        for (int i = 1; i <= GhprcConnectionCache.MAX_SIZE; i++) {
+            GhprcConnectionCache.put("key" + i, gitHub);
+        }
+        assertThat(GhprcConnectionCache.getBotLogin("key0")).isNull();
+    }
+}
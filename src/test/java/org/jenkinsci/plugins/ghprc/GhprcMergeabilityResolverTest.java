@@ -0,0 +1,51 @@
+package org.jenkinsci.plugins.ghprc;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kohsuke.github.GHPullRequest;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Unit tests for {@link GhprcMergeabilityResolver}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class GhprcMergeabilityResolverTest {
+
+    @Mock
+    private GhprcRepository repo;
+    @Mock
+    private GHPullRequest pr;
+
+    @Test
+    public void testKnownMergeabilityIsImmediate() throws Exception {
+        ListenableFuture<Boolean> future = GhprcMergeabilityResolver.resolve(repo, 1, true);
+
+        assertThat(future.isDone()).isTrue();
+        assertThat(future.get()).isTrue();
+        verifyZeroInteractions(repo);
+    }
+
+    @Test
+    public void testPollsUntilGitHubHasAnAnswer() throws Exception {
+        given(repo.getName()).willReturn("user/repo");
+        given(repo.getPullRequest(2)).willReturn(pr);
+        given(pr.getMergeable()).willReturn(null, false);
+
+        ListenableFuture<Boolean> future = GhprcMergeabilityResolver.resolve(repo, 2, null);
+        ListenableFuture<Boolean> shared = GhprcMergeabilityResolver.resolve(repo, 2, null);
+
+        assertThat(shared).isSameAs(future);
+        assertThat(future.get(10, TimeUnit.SECONDS)).isFalse();
+        verify(repo, times(2)).getPullRequest(2);
+    }
+}
@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link GhprcOutputFile}.
+ */
+public class GhprcOutputFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallFileIsReadWhole() throws Exception {
+        File file = write("Build finished.");
+
+        GhprcOutputFile.Content content = new GhprcOutputFile(1024, GhprcCommentDigest.MD5).invoke(file, null);
+
+        assertThat(content.getText()).isEqualTo("Build finished.");
+        assertThat(content.isTruncated()).isFalse();
+        assertThat(content.getDigest()).isEqualTo(GhprcCommentDigest.MD5.digest("Build finished."));
+    }
+
+    @Test
+    public void testLargeFileIsTruncatedButDigestedWhole() throws Exception {
+        String text = "0123456789abcdefghij";
+        File file = write(text);
+
+        GhprcOutputFile.Content content = new GhprcOutputFile(10, GhprcCommentDigest.SHA256).invoke(file, null);
+
+        assertThat(content.getText()).isEqualTo("0123456789");
+        assertThat(content.isTruncated()).isTrue();
+        assertThat(content.getDigest()).isEqualTo(GhprcCommentDigest.SHA256.digest(text));
+    }
+
+    @Test
+    public void testNoDigestWhenNoneAsked() throws Exception {
+        GhprcOutputFile.Content content = new GhprcOutputFile(10, null).invoke(write("0123456789abcdefghij"), null);
+
+        assertThat(content.getText()).isEqualTo("0123456789");
+        assertThat(content.isTruncated()).isTrue();
+        assertThat(content.getDigest()).isNull();
+    }
+
+    @Test
+    public void testCutIsMovedBackToCharacterBoundary() throws Exception {
+        // the e acute takes two bytes and the euro sign three in UTF-8
+        File file = write("ab\u00e9\u20accd");
+
+        assertThat(new GhprcOutputFile(3, null).invoke(file, null).getText()).isEqualTo("ab");
+        assertThat(new GhprcOutputFile(4, null).invoke(file, null).getText()).isEqualTo("ab\u00e9");
+        assertThat(new GhprcOutputFile(6, null).invoke(file, null).getText()).isEqualTo("ab\u00e9");
+        assertThat(new GhprcOutputFile(7, null).invoke(file, null).getText()).isEqualTo("ab\u00e9\u20ac");
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingFile() throws Exception {
+        new GhprcOutputFile(10, null).invoke(new File(folder.getRoot(), "missing.txt"), null);
+    }
+
+    private File write(String text) throws Exception {
+        File file = folder.newFile("output.txt");
+        FileUtils.writeStringToFile(file, text, "UTF-8");
+        return file;
+    }
+}
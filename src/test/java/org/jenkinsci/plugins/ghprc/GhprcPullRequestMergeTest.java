@@ -31,7 +31,6 @@ import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -83,15 +82,13 @@ public class GhprcPullRequestMergeTest {
 
         GhprcTrigger trigger = spy(GhprcTestUtil.getTrigger(triggerValues));
 
-        ConcurrentMap<Integer, GhprcPullRequest> pulls = new ConcurrentHashMap<Integer, GhprcPullRequest>(1);
-        Integer pullId = 1;
-        pulls.put(pullId, pullRequest);
-        Map<String, ConcurrentMap<Integer, GhprcPullRequest>> jobs = new HashMap<String, ConcurrentMap<Integer, GhprcPullRequest>>(1);
-        jobs.put("project", pulls);
-
         GithubProjectProperty projectProperty = new GithubProjectProperty("https://github.com/jenkinsci/ghprc-plugin");
         DescriptorImpl descriptor = trigger.getDescriptor();
 
+        ConcurrentMap<Integer, GhprcPullRequest> pulls = descriptor.getPullRequests("project");
+        Integer pullId = 1;
+        pulls.put(pullId, pullRequest);
+
         PrintStream logger = mock(PrintStream.class);
 
         given(parent.getFullName()).willReturn("");
@@ -121,10 +118,6 @@ public class GhprcPullRequestMergeTest {
         parentField.setAccessible(true);
         parentField.set(build, project);
 
-        Field jobsField = descriptor.getClass().getDeclaredField("jobs");
-        jobsField.setAccessible(true);
-        jobsField.set(descriptor, jobs);
-
         helper = spy(new Ghprc(project, trigger, pulls));
         trigger.setHelper(helper);
         given(helper.getRepository()).willReturn(repo);
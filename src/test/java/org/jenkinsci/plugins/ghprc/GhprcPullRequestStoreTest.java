@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link GhprcPullRequestStore}.
+ */
+public class GhprcPullRequestStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWritesOnlyDirtyShards() throws Exception {
+        File root = folder.newFolder("pulls");
+        GhprcPullRequestStore store = new GhprcPullRequestStore(root);
+        store.get("folder/job");
+        store.get("other");
+
+        store.saveAll();
+        assertThat(root.list()).isEmpty();
+
+        store.markDirty("folder/job");
+        store.saveAll();
+        assertThat(root.list()).containsOnly("folder%2Fjob.xml");
+    }
+
+    @Test
+    public void testSavesAreCoalesced() throws Exception {
+        File root = folder.newFolder("pulls");
+        GhprcPullRequestStore store = new GhprcPullRequestStore(root);
+
+        store.scheduleSave("job", 60000);
+        store.scheduleSave("job", 60000);
+        store.scheduleSave("other", 60000);
+        assertThat(root.list()).isEmpty();
+
+        store.flush();
+        assertThat(root.list()).containsOnly("job.xml", "other.xml");
+        assertThat(store.getFlushCount()).isEqualTo(1);
+        assertThat(store.getMaxBatchSize()).isEqualTo(3);
+    }
+
+    @Test
+    public void testMigrationWritesShard() throws Exception {
+        File root = folder.newFolder("pulls");
+        GhprcPullRequestStore store = new GhprcPullRequestStore(root);
+
+        store.migrate("job", new ConcurrentHashMap<Integer, GhprcPullRequest>());
+
+        assertThat(new File(root, "job.xml").exists()).isTrue();
+        assertThat(new GhprcPullRequestStore(root).get("job")).isEmpty();
+    }
+
+    @Test
+    public void testPollStateSurvivesReload() throws Exception {
+        File root = folder.newFolder("pulls");
+        GhprcPullRequestStore store = new GhprcPullRequestStore(root);
+        Date mark = new Date(1430869227000L);
+        store.getPollState("job").useFor("user/repo");
+        store.getPollState("job").update("\"etag\"", "Tue, 05 May 2015 23:40:27 GMT", mark);
+
+        store.saveAll();
+        assertThat(root.list()).containsOnly("poll");
+
+        GhprcPollState reloaded = new GhprcPullRequestStore(root).getPollState("job");
+        assertThat(reloaded.getEtag()).isEqualTo("\"etag\"");
+        assertThat(reloaded.getLastModified()).isEqualTo("Tue, 05 May 2015 23:40:27 GMT");
+        assertThat(reloaded.getHighWaterMark()).isEqualTo(mark);
+        assertThat(new GhprcPullRequestStore(root).get("job")).isEmpty();
+    }
+
+    @Test
+    public void testRemoveDeletesFiles() throws Exception {
+        File root = folder.newFolder("pulls");
+        GhprcPullRequestStore store = new GhprcPullRequestStore(root);
+        store.getPollState("job").update("\"etag\"", null, null);
+        store.markDirty("job");
+        store.saveAll();
+        assertThat(root.list()).containsOnly("job.xml", "poll");
+
+        store.remove("job");
+
+        assertThat(root.list()).containsOnly("poll");
+        assertThat(new File(root, "poll").list()).isEmpty();
+        assertThat(store.getPollState("job").getEtag()).isNull();
+    }
+
+    @Test
+    public void testRenameMovesLiveShard() throws Exception {
+        File root = folder.newFolder("pulls");
+        GhprcPullRequestStore store = new GhprcPullRequestStore(root);
+        ConcurrentMap<Integer, GhprcPullRequest> pulls = store.get("old");
+        GhprcPollState pollState = store.getPollState("old");
+        pollState.update("\"etag\"", null, null);
+        store.markDirty("old");
+        store.saveAll();
+
+        store.rename("old", "new");
+
+        assertThat(store.get("new")).isSameAs(pulls);
+        assertThat(store.getPollState("new")).isSameAs(pollState);
+        assertThat(root.list()).containsOnly("new.xml", "poll");
+        assertThat(new File(root, "poll").list()).containsOnly("new.xml");
+
+        store.markDirty("new");
+        store.saveAll();
+        assertThat(root.list()).containsOnly("new.xml", "poll");
+        assertThat(new GhprcPullRequestStore(root).getPollState("new").getEtag()).isEqualTo("\"etag\"");
+    }
+}
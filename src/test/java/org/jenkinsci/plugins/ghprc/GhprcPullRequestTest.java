@@ -1,5 +1,7 @@
 package org.jenkinsci.plugins.ghprc;
 
+import jenkins.model.Jenkins;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.kohsuke.github.GHCommitPointer;
@@ -13,6 +15,7 @@ import java.util.Date;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
@@ -68,6 +71,142 @@ public class GhprcPullRequestTest {
 
     }
 
+    @Test
+    public void testBuildsOnlyWhenFingerprintChanges() throws IOException {
+        // GIVEN
+        GHUser ghUser = mock(GHUser.class);
+        GHCommitPointer head = mock(GHCommitPointer.class);
+        GHCommitPointer base = mock(GHCommitPointer.class);
+        GhprcBuilds builds = mock(GhprcBuilds.class);
+
+        given(pr.getNumber()).willReturn(10);
+        given(pr.getUpdatedAt()).willReturn(new Date(1000));
+        given(pr.getHead()).willReturn(head);
+        given(pr.getBase()).willReturn(base);
+        given(pr.getMergeable()).willReturn(true);
+        given(head.getSha()).willReturn("head sha");
+        given(base.getSha()).willReturn("base sha");
+        given(pr.getUser()).willReturn(ghUser);
+        given(repo.getName()).willReturn("name");
+        given(helper.getBuilds()).willReturn(builds);
+        given(builds.build(any(GhprcPullRequest.class))).willReturn(true);
+
+        GhprcPullRequest ghprcPullRequest = new GhprcPullRequest(pr, helper, repo);
+
+        // WHEN
+        ghprcPullRequest.check(pr);
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, times(1)).build(ghprcPullRequest);
+        assertThat(ghprcPullRequest.getLastDecision()).isEqualTo("Build skipped: nothing changed since the last build");
+
+        // WHEN
+        given(base.getSha()).willReturn("new base sha");
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, times(2)).build(ghprcPullRequest);
+        assertThat(ghprcPullRequest.getLastDecision()).isEqualTo("Build triggered: base sha changed");
+    }
+
+    @Test
+    public void testBuildNotQueuedIsTriedAgain() throws IOException {
+        // GIVEN
+        GhprcBuilds builds = mockPullRequest();
+        given(builds.build(any(GhprcPullRequest.class))).willReturn(false, true);
+        GhprcPullRequest ghprcPullRequest = new GhprcPullRequest(pr, helper, repo);
+
+        // WHEN
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, times(1)).build(ghprcPullRequest);
+        assertThat(ghprcPullRequest.getLastDecision()).isEqualTo("Build skipped: the build couldn't be queued, it will be tried again");
+
+        // WHEN
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, times(2)).build(ghprcPullRequest);
+        assertThat(ghprcPullRequest.getLastDecision()).isEqualTo("Build triggered: no build was triggered for it yet");
+    }
+
+    @Test
+    public void testDisabledProjectDoesNotConsumeFingerprint() throws IOException {
+        // GIVEN
+        GhprcBuilds builds = mockPullRequest();
+        given(builds.build(any(GhprcPullRequest.class))).willReturn(true);
+        // disabled between the check and the build
+        given(helper.isProjectDisabled()).willReturn(false, true, false);
+        GhprcPullRequest ghprcPullRequest = new GhprcPullRequest(pr, helper, repo);
+
+        // WHEN
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, never()).build(ghprcPullRequest);
+
+        // WHEN
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, times(1)).build(ghprcPullRequest);
+    }
+
+    @Test
+    public void testOwnResultCommentDoesNotTriggerBuild() throws IOException {
+        // GIVEN
+        GhprcBuilds builds = mockPullRequest();
+        given(builds.build(any(GhprcPullRequest.class))).willReturn(true);
+        GhprcPullRequest ghprcPullRequest = new GhprcPullRequest(pr, helper, repo);
+        ghprcPullRequest.check(pr);
+
+        // WHEN the result comment of the build updated the pull request
+        ghprcPullRequest.setLastOwnUpdate(new Date(2000));
+        given(pr.getUpdatedAt()).willReturn(new Date(2000));
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, times(1)).build(ghprcPullRequest);
+        assertThat(ghprcPullRequest.getLastDecision()).isEqualTo("Build skipped: nothing changed since the last build");
+
+        // WHEN someone else updated it afterwards
+        given(pr.getUpdatedAt()).willReturn(new Date(3000));
+        ghprcPullRequest.check(pr);
+
+        // THEN
+        verify(builds, times(2)).build(ghprcPullRequest);
+        assertThat(ghprcPullRequest.getLastDecision()).isEqualTo("Build triggered: update date changed");
+    }
+
+    @Test
+    public void testChangeReason() {
+        assertThat(GhprcPullRequest.getChangeReason(null, "a|b|1|c")).isEqualTo("no build was triggered for it yet");
+        assertThat(GhprcPullRequest.getChangeReason("a|b|1|c", "a|b|1|c")).isNull();
+        assertThat(GhprcPullRequest.getChangeReason("a|b|1|c", "x|b|2|c")).isEqualTo("head sha changed, update date changed");
+    }
+
+    @Test
+    public void testLegacyRecordIsCompacted() {
+        String legacy = "<org.jenkinsci.plugins.ghprc.GhprcPullRequest>"
+                + "<id>5</id>"
+                + "<author><login>octocat</login></author>"
+                + "<pr><number>5</number><title>legacy</title></pr>"
+                + "<title>legacy</title>"
+                + "<head>abc</head>"
+                + "</org.jenkinsci.plugins.ghprc.GhprcPullRequest>";
+
+        GhprcPullRequest pull = (GhprcPullRequest) Jenkins.XSTREAM2.fromXML(legacy);
+
+        assertThat(pull.getId()).isEqualTo(5);
+        assertThat(pull.getAuthorLogin()).isEqualTo("octocat");
+        assertThat(pull.getHead()).isEqualTo("abc");
+        String xml = Jenkins.XSTREAM2.toXML(pull);
+        assertThat(xml).contains("<authorLogin>octocat</authorLogin>").contains("<version>1</version>");
+        assertThat(xml).excludes("<author>").excludes("<pr>");
+    }
+
     @Test
     public void testInitRepoNameNotNull() throws IOException {
         // GIVEN
@@ -101,4 +240,22 @@ public class GhprcPullRequestTest {
         verify(ghprcRepository, never()).getName();
     }
 
+    private GhprcBuilds mockPullRequest() throws IOException {
+        GHUser ghUser = mock(GHUser.class);
+        GHCommitPointer head = mock(GHCommitPointer.class);
+        GHCommitPointer base = mock(GHCommitPointer.class);
+        GhprcBuilds builds = mock(GhprcBuilds.class);
+
+        given(pr.getNumber()).willReturn(10);
+        given(pr.getUpdatedAt()).willReturn(new Date(1000));
+        given(pr.getHead()).willReturn(head);
+        given(pr.getBase()).willReturn(base);
+        given(pr.getMergeable()).willReturn(true);
+        given(head.getSha()).willReturn("head sha");
+        given(base.getSha()).willReturn("base sha");
+        given(pr.getUser()).willReturn(ghUser);
+        given(repo.getName()).willReturn("name");
+        given(helper.getBuilds()).willReturn(builds);
+        return builds;
+    }
 }
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.ghprc;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.jenkinsci.plugins.ghprc.GhprcRateLimitScheduler.Priority.HIGH;
+import static org.jenkinsci.plugins.ghprc.GhprcRateLimitScheduler.Priority.LOW;
+
+/**
+ * Unit tests for {@link GhprcRateLimitScheduler}.
+ */
+public class GhprcRateLimitSchedulerTest {
+
+    private final GhprcRateLimitScheduler scheduler = new GhprcRateLimitScheduler("test");
+
+    @Test
+    public void testUnknownBudgetAllowsWork() {
+        assertThat(scheduler.tryAcquire(LOW)).isTrue();
+        assertThat(scheduler.tryAcquire(HIGH)).isTrue();
+        assertThat(scheduler.getRemaining()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testReserveIsKeptForHighPriority() {
+        scheduler.update(100, 11, System.currentTimeMillis() + 60000);
+
+        assertThat(scheduler.tryAcquire(LOW)).isTrue();
+        scheduler.charge();
+        assertThat(scheduler.getRemaining()).isEqualTo(10);
+        assertThat(scheduler.tryAcquire(LOW)).isFalse();
+        assertThat(scheduler.tryAcquire(HIGH)).isTrue();
+        scheduler.charge();
+        assertThat(scheduler.getRemaining()).isEqualTo(9);
+    }
+
+    @Test
+    public void testEveryRequestIsCharged() {
+        scheduler.update(100, 50, System.currentTimeMillis() + 60000);
+
+        assertThat(scheduler.tryAcquire(LOW)).isTrue();
+        for (int i = 0; i < 45; i++) {
+            scheduler.charge();
+        }
+
+        assertThat(scheduler.getRemaining()).isEqualTo(5);
+        assertThat(scheduler.tryAcquire(LOW)).isFalse();
+    }
+
+    @Test
+    public void testExhaustedBudgetRefillsAfterReset() {
+        scheduler.update(100, 0, System.currentTimeMillis() + 60000);
+        assertThat(scheduler.tryAcquire(HIGH)).isFalse();
+
+        scheduler.update(100, 0, System.currentTimeMillis() - 1);
+        assertThat(scheduler.tryAcquire(LOW)).isTrue();
+    }
+
+    @Test
+    public void testAcquireReturnsOnceBudgetIsAvailable() throws InterruptedException {
+        scheduler.update(100, 0, System.currentTimeMillis() + 100);
+
+        long start = System.currentTimeMillis();
+        scheduler.acquire(HIGH);
+
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(50);
+    }
+}
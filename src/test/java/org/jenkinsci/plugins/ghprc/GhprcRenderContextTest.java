@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommentAppender;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatus;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommentAppender;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcContextCommitStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kohsuke.github.GHRepository;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link GhprcRenderContext}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("deprecation")
+public class GhprcRenderContextTest {
+
+    @Mock
+    private AbstractBuild<?, ?> build;
+    @Mock
+    private TaskListener listener;
+    @Mock
+    private GHRepository repo;
+
+    private GhprcRenderContext context;
+
+    @Before
+    public void setUp() {
+        context = new GhprcRenderContext(build, listener);
+    }
+
+    @Test
+    public void testCommitStatusWithoutContextGetsBuild() throws Exception {
+        // GIVEN
+        GhprcCommitStatus status = mock(GhprcCommitStatus.class);
+
+        // WHEN
+        context.onBuildStart(status, repo);
+        context.onBuildComplete(status, repo);
+
+        // THEN
+        verify(status).onBuildStart(build, listener, repo);
+        verify(status).onBuildComplete(build, listener, repo);
+    }
+
+    @Test
+    public void testCommitStatusWithContextGetsContext() throws Exception {
+        // GIVEN
+        GhprcContextCommitStatus status = mock(GhprcContextCommitStatus.class);
+
+        // WHEN
+        context.onBuildStart(status, repo);
+        context.onBuildComplete(status, repo);
+
+        // THEN
+        verify(status).onBuildStart(context, repo);
+        verify(status).onBuildComplete(context, repo);
+        verify(status, never()).onBuildStart(any(AbstractBuild.class), any(TaskListener.class), any(GHRepository.class));
+    }
+
+    @Test
+    public void testCommentAppenderWithoutContextGetsBuild() {
+        // GIVEN
+        GhprcCommentAppender appender = mock(GhprcCommentAppender.class);
+        given(appender.postBuildComment(build, listener)).willReturn("legacy");
+
+        // WHEN
+        String comment = context.postBuildComment(appender);
+
+        // THEN
+        assertThat(comment).isEqualTo("legacy");
+    }
+
+    @Test
+    public void testCommentAppenderWithContextGetsContext() {
+        // GIVEN
+        GhprcContextCommentAppender appender = mock(GhprcContextCommentAppender.class);
+        given(appender.postBuildComment(context)).willReturn("rendered");
+
+        // WHEN
+        String comment = context.postBuildComment(appender);
+
+        // THEN
+        assertThat(comment).isEqualTo("rendered");
+        verify(appender, never()).postBuildComment(any(AbstractBuild.class), any(TaskListener.class));
+    }
+}
@@ -4,6 +4,7 @@ import hudson.model.AbstractProject;
 import hudson.model.queue.QueueTaskFuture;
 import org.apache.commons.codec.binary.Hex;
 import org.jenkinsci.plugins.ghprc.extensions.status.GhprcSimpleStatus;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -22,7 +23,9 @@ import org.kohsuke.github.PagedIterable;
 import org.kohsuke.github.PagedIterator;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -44,10 +47,14 @@ import static org.kohsuke.github.GHIssueState.OPEN;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.endsWith;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
@@ -66,6 +73,7 @@ public class GhprcRepositoryTest {
     private static final String TEST_REPO_NAME = "test-repo";
     private static final Date UPDATE_DATE = new Date();
     private static final String msg = "Build triggered. sha1 is merged.";
+    private static final String COMMENTS = "/repos/" + TEST_USER_NAME + "/" + TEST_REPO_NAME + "/issues/comments";
 
     @Mock
     private GitHub gt;
@@ -98,6 +106,7 @@ public class GhprcRepositoryTest {
     @Before
     @SuppressWarnings("unused")
     public void setUp() throws Exception {
+        GhprcTestUtil.useSynchronousCommitStatuses();
         AbstractProject<?, ?> project = jenkinsRule.createFreeStyleProject("GhprcRepoTest");
         trigger = spy(GhprcTestUtil.getTrigger(null));
         doReturn(mock(QueueTaskFuture.class)).when(trigger).startJob(any(GhprcCause.class), any(GhprcRepository.class));
@@ -121,6 +130,11 @@ public class GhprcRepositoryTest {
         trigger.getExtensions().add(status);
     }
 
+    @After
+    public void tearDown() {
+        GhprcTestUtil.useBackgroundCommitStatuses();
+    }
+
     @Test
     public void testCheckMethodWhenUsingGitHubEnterprise() throws IOException {
         // GIVEN
@@ -202,6 +216,7 @@ public class GhprcRepositoryTest {
 
         // WHEN
         ghprcRepository.check();
+        GhprcTestUtil.flushCommitStatuses();
 
         // THEN
 
@@ -211,21 +226,23 @@ public class GhprcRepositoryTest {
         /** GH PR verifications */
         verify(ghRepository, times(1)).getPullRequests(OPEN); // Call to Github API
         verify(ghRepository, times(1)).createCommitStatus(eq("head sha"), eq(PENDING), isNull(String.class), eq(msg), eq("default")); // Call to Github API
+        verify(ghRepository, times(1)).getFullName(); // Key of the commit status queue
         verifyNoMoreInteractions(ghRepository);
 
         verify(ghPullRequest, times(1)).getTitle();
         verify(ghPullRequest, times(2)).getUser();
         verify(ghPullRequest, times(1)).getMergeable(); // Call to Github API
-        verify(ghPullRequest, times(8)).getHead();
-        verify(ghPullRequest, times(3)).getBase();
+        verify(ghPullRequest, times(9)).getHead();
+        verify(ghPullRequest, times(4)).getBase();
         verify(ghPullRequest, times(5)).getNumber();
-        verify(ghPullRequest, times(3)).getUpdatedAt();
+        verify(ghPullRequest, times(4)).getUpdatedAt();
         verify(ghPullRequest, times(1)).getHtmlUrl();
         verify(ghPullRequest, times(1)).listCommits();
         verify(ghPullRequest, times(2)).getBody();
         verifyNoMoreInteractions(ghPullRequest);
 
         verify(helper, times(1)).getBuilds();
+        verify(helper, times(1)).getTrigger(); // Configuration part of the build fingerprint
         verify(helper, times(5)).isProjectDisabled();
         verifyNoMoreInteractions(helper);
 
@@ -283,44 +300,234 @@ public class GhprcRepositoryTest {
         verifyZeroInteractions(helper);
     }
 
+    @Test
+    public void testCheckSkippedWhenPullRequestsNotModified() throws IOException {
+        // GIVEN
+        GhprcRestClient restClient = mock(GhprcRestClient.class);
+        given(gitHub.getRestClient()).willReturn(restClient);
+        given(restClient.get(anyString(), isNull(String.class), isNull(String.class)))
+                .willReturn(new GhprcRestClient.Response(200, "\"etag\"", null, "[]"));
+        given(restClient.get(anyString(), eq("\"etag\""), isNull(String.class)))
+                .willReturn(new GhprcRestClient.Response(304, "\"etag\"", null, null));
+        given(ghRepository.getPullRequests(eq(GHIssueState.OPEN))).willReturn(new ArrayList<GHPullRequest>());
+
+        // WHEN
+        ghprcRepository.check();
+        ghprcRepository.check();
+
+        // THEN
+        verify(restClient, times(2)).get(anyString(), anyString(), isNull(String.class));
+        verify(ghRepository, times(1)).getPullRequests(OPEN);
+        verifyNoMoreInteractions(ghRepository);
+    }
+
+    @Test
+    public void testCheckOnlyUpdatedPullRequestsAfterFirstPoll() throws IOException {
+        // GIVEN
+        GhprcRestClient restClient = mock(GhprcRestClient.class);
+        given(gitHub.getRestClient()).willReturn(restClient);
+        given(restClient.get(endsWith("per_page=1"), isNull(String.class), isNull(String.class)))
+                .willReturn(new GhprcRestClient.Response(200, "\"etag1\"", null,
+                        "[{\"number\": 1, \"state\": \"open\", \"updated_at\": \"2015-05-05T23:40:27Z\"}]"));
+        given(restClient.get(endsWith("per_page=1"), eq("\"etag1\""), isNull(String.class)))
+                .willReturn(new GhprcRestClient.Response(200, "\"etag2\"", null,
+                        "[{\"number\": 1, \"state\": \"closed\", \"updated_at\": \"2015-05-06T10:00:00Z\"}]"));
+        given(restClient.get(contains("&page=1"), isNull(String.class), isNull(String.class)))
+                .willReturn(new GhprcRestClient.Response(200, null, null,
+                        "[{\"number\": 1, \"state\": \"closed\", \"updated_at\": \"2015-05-06T10:00:00Z\"},"
+                        + " {\"number\": 5, \"state\": \"open\", \"updated_at\": \"2015-05-01T00:00:00Z\"}]"));
+        given(ghRepository.getPullRequests(eq(GHIssueState.OPEN))).willReturn(new ArrayList<GHPullRequest>());
+
+        // WHEN
+        ghprcRepository.check();
+        pulls.put(1, ghprcPullRequest);
+        ghprcRepository.check();
+
+        // THEN
+        Assert.assertFalse(pulls.containsKey(1));
+        verify(ghRepository, times(1)).getPullRequests(OPEN); // Only the first poll lists all pull requests
+        verifyNoMoreInteractions(ghRepository);
+    }
+
+    @Test
+    public void testPollFailingPartwayKeepsHighWaterMark() throws IOException {
+        // GIVEN
+        Date mark = GhprcWebHookEvent.parseDate("2015-05-05T23:40:27Z");
+        GhprcPollState pollState = new GhprcPollState();
+        pollState.useFor(TEST_USER_NAME + "/" + TEST_REPO_NAME);
+        pollState.update("\"etag1\"", null, mark);
+        ghprcRepository = new GhprcRepository(TEST_USER_NAME, TEST_REPO_NAME, helper, pulls, pollState);
+
+        GhprcRestClient restClient = mock(GhprcRestClient.class);
+        given(gitHub.getRestClient()).willReturn(restClient);
+        given(restClient.get(endsWith("per_page=1"), eq("\"etag1\""), isNull(String.class)))
+                .willReturn(new GhprcRestClient.Response(200, "\"etag2\"", null,
+                        "[{\"number\": 5, \"state\": \"open\", \"updated_at\": \"2015-05-06T10:00:00Z\"}]"));
+        given(restClient.get(contains("&page=1"), isNull(String.class), isNull(String.class)))
+                .willReturn(new GhprcRestClient.Response(200, null, null,
+                        "[{\"number\": 5, \"state\": \"open\", \"updated_at\": \"2015-05-06T10:00:00Z\"}]"));
+        given(ghRepository.getPullRequest(5)).willThrow(new IOException("connection reset"));
+
+        // WHEN
+        ghprcRepository.check();
+        ghprcRepository.check();
+
+        // THEN
+        Assert.assertEquals(mark, pollState.getHighWaterMark());
+        Assert.assertEquals("\"etag1\"", pollState.getEtag());
+        verify(restClient, times(2)).get(endsWith("per_page=1"), eq("\"etag1\""), isNull(String.class));
+        verify(ghRepository, times(2)).getPullRequest(5);
+        verify(ghRepository, never()).getPullRequests(OPEN);
+    }
+
+    @Test
+    public void testPollStateOfAnotherRepositoryIsIgnored() {
+        // GIVEN
+        GhprcPollState pollState = new GhprcPollState();
+        pollState.useFor("other-user/other-repo");
+        pollState.update("\"etag1\"", null, new Date());
+
+        // WHEN
+        new GhprcRepository(TEST_USER_NAME, TEST_REPO_NAME, helper, pulls, pollState);
+
+        // THEN
+        Assert.assertNull(pollState.getEtag());
+        Assert.assertNull(pollState.getHighWaterMark());
+    }
+
+    @Test
+    public void testJobsOfSameRepositoryDontPollAtOnce() throws IOException {
+        // GIVEN
+        final GhprcRepository otherJob = new GhprcRepository(TEST_USER_NAME, TEST_REPO_NAME.toUpperCase(), helper,
+                new ConcurrentHashMap<Integer, GhprcPullRequest>());
+        given(ghRepository.getPullRequests(eq(GHIssueState.OPEN))).willAnswer(new Answer<List<GHPullRequest>>() {
+            public List<GHPullRequest> answer(InvocationOnMock invocation) {
+                otherJob.check();
+                return new ArrayList<GHPullRequest>();
+            }
+        });
+
+        // WHEN
+        ghprcRepository.check();
+
+        // THEN
+        verify(ghRepository, times(1)).getPullRequests(OPEN);
+    }
+
     @Test
     public void testExceedRateLimit() throws IOException {
         // GIVEN
-        ghRateLimit.remaining = 0;
+        GhprcRateLimitScheduler rateLimit = spy(new GhprcRateLimitScheduler("test"));
+        rateLimit.update(5000, 0, System.currentTimeMillis() + 60000);
+        doNothing().when(rateLimit).runAfterReset(any(Runnable.class));
+        given(gitHub.getRateLimitScheduler()).willReturn(rateLimit);
 
         // WHEN
         ghprcRepository.check();
 
         // THEN
-        verify(helper, only()).getGitHub();
-        verify(gitHub, only()).get();
-        verify(gt, only()).getRateLimit();
+        verify(rateLimit).runAfterReset(any(Runnable.class));
+        verify(gt, never()).getRateLimit();
         verifyZeroInteractions(ghRepository);
-        verifyZeroInteractions(gitHub);
-        verifyZeroInteractions(gt);
     }
 
     @Test
-    public void testSignature() throws IOException, InvalidKeyException, NoSuchAlgorithmException {
-        String body = URLEncoder.encode("payload=" + GhprcTestUtil.PAYLOAD, "UTF-8");
-        String actualSecret = "123";
-        String actualSignature = createSHA1Signature(actualSecret, body);
-        String fakeSignature = createSHA1Signature("abc", body);
-        
-        Assert.assertFalse(actualSignature.equals(fakeSignature));
-        Assert.assertTrue(GhprcWebHook.checkSignature(body, actualSignature, actualSecret));
-        Assert.assertFalse(GhprcWebHook.checkSignature(body, fakeSignature, actualSecret));
+    public void testCommentUpdatedByStoredId() throws IOException {
+        // GIVEN
+        GhprcRestClient restClient = useRestClientForComments();
+        ghprcPullRequest.setCommentId(42);
+
+        // WHEN
+        ghprcRepository.addOrUpdateComment(ghprcPullRequest.getId(), "Build finished.", "digest", null, null);
+
+        // THEN
+        verify(restClient).send(eq("PATCH"), eq(COMMENTS + "/42"), contains("Build finished."));
+        verifyNoMoreInteractions(restClient);
+        Assert.assertEquals(42, ghprcPullRequest.getCommentId());
+        Assert.assertEquals("digest", ghprcPullRequest.getLastCommentDigest());
     }
 
-    private String createSHA1Signature(String secret, String body) throws UnsupportedEncodingException, NoSuchAlgorithmException, InvalidKeyException {
-        String algorithm = "HmacSHA1";
-        SecretKeySpec keySpec = new SecretKeySpec(secret.getBytes(), algorithm);
-        Mac mac = Mac.getInstance(algorithm);
-        mac.init(keySpec);
+    @Test
+    public void testDeletedCommentFallsBackToSearch() throws IOException {
+        // GIVEN
+        GhprcRestClient restClient = useRestClientForComments();
+        ghprcPullRequest.setCommentId(42);
+        given(restClient.send(eq("PATCH"), eq(COMMENTS + "/42"), anyString())).willThrow(new FileNotFoundException());
+        given(restClient.get(contains("&page=1"), anyString(), anyString()))
+                .willReturn(new GhprcRestClient.Response(200, null, null, "[{\"id\": 7, \"user\": {\"login\": \"bot\"}, \"body\": \"old\"}]"));
+
+        // WHEN
+        ghprcRepository.addOrUpdateComment(ghprcPullRequest.getId(), "Build finished.", "digest", null, null);
 
-        byte[] signatureBytes = mac.doFinal(body.getBytes("UTF-8"));
-        String signature = Hex.encodeHexString(signatureBytes);
-        return "sha1=" + signature;
+        // THEN
+        verify(restClient).send(eq("PATCH"), eq(COMMENTS + "/7"), contains("Build finished."));
+        Assert.assertEquals(7, ghprcPullRequest.getCommentId());
+    }
+
+    @Test
+    public void testCommentNotEditableAnymoreFallsBackToNewComment() throws IOException {
+        // GIVEN
+        GhprcRestClient restClient = useRestClientForComments();
+        ghprcPullRequest.setCommentId(42);
+        given(restClient.send(eq("PATCH"), eq(COMMENTS + "/42"), anyString()))
+                .willThrow(new GhprcRestClient.ErrorResponseException(403, "forbidden"));
+        given(restClient.get(anyString(), anyString(), anyString())).willReturn(new GhprcRestClient.Response(200, null, null, "[]"));
+        given(restClient.send(eq("POST"), anyString(), anyString())).willReturn(new GhprcRestClient.Response(201, null, null, "{\"id\": 99}"));
+
+        // WHEN
+        ghprcRepository.addOrUpdateComment(ghprcPullRequest.getId(), "Build finished.", "digest", null, null);
+
+        // THEN
+        verify(restClient).send(eq("POST"), endsWith("/issues/" + ghprcPullRequest.getId() + "/comments"), contains("Build finished."));
+        Assert.assertEquals(99, ghprcPullRequest.getCommentId());
+    }
+
+    @Test
+    public void testCommentSearchIsBoundedAndNewIdRemembered() throws IOException {
+        // GIVEN
+        GhprcRestClient restClient = useRestClientForComments();
+        StringBuilder page = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            page.append(i == 0 ? "" : ",").append("{\"id\": ").append(i).append(", \"user\": {\"login\": \"someone\"}}");
+        }
+        page.append("]");
+        given(restClient.get(anyString(), anyString(), anyString())).willReturn(new GhprcRestClient.Response(200, null, null, page.toString()));
+        given(restClient.send(eq("POST"), anyString(), anyString()))
+                .willReturn(new GhprcRestClient.Response(201, null, null, "{\"id\": 99, \"updated_at\": \"2015-05-05T23:40:27Z\"}"));
+
+        // WHEN
+        ghprcRepository.addOrUpdateComment(ghprcPullRequest.getId(), "Build finished.", "digest", null, null);
+
+        // THEN
+        verify(restClient, times(3)).get(anyString(), anyString(), anyString()); // Only the first pages are searched
+        verify(restClient, never()).get(contains("&page=4"), anyString(), anyString());
+        verify(restClient).send(eq("POST"), anyString(), contains("Build finished."));
+        Assert.assertEquals(99, ghprcPullRequest.getCommentId());
+        Assert.assertEquals("digest", ghprcPullRequest.getLastCommentDigest());
+        Assert.assertEquals(GhprcWebHookEvent.parseDate("2015-05-05T23:40:27Z"), ghprcPullRequest.getLastOwnUpdate());
+    }
+
+    @Test
+    public void testPushHookSetsBranchHead() throws IOException {
+        // GIVEN
+        String push = "{\"ref\": \"refs/heads/master\", \"after\": \"pushed sha\", \"repository\": {\"full_name\": \"test-user/test-repo\"}}";
+
+        // WHEN
+        ghprcRepository.onPushHook(GhprcWebHookEvent.parse("push", push.getBytes("UTF-8")));
+
+        // THEN
+        Assert.assertEquals("pushed sha", ghprcRepository.getBranchHead("master"));
+        verifyZeroInteractions(ghRepository);
+    }
+
+    private GhprcRestClient useRestClientForComments() throws IOException {
+        GhprcRestClient restClient = mock(GhprcRestClient.class);
+        given(gitHub.getRestClient()).willReturn(restClient);
+        given(gitHub.getBotUserLogin()).willReturn("bot");
+        given(helper.getTrigger()).willReturn(trigger);
+        doReturn("GhprcRepoTest").when(trigger).getProject();
+        pulls.put(ghprcPullRequest.getId(), ghprcPullRequest);
+        return restClient;
     }
 
     private void initGHPRWithTestData() throws IOException {
@@ -353,6 +560,6 @@ public class GhprcRepositoryTest {
         verify(helper, times(callsCount)).getGitHub();
         verify(gitHub, times(callsCount)).get(); // Call to Github API (once, than cached)
         verify(gt, times(1)).getRepository(anyString()); // Call to Github API
-        verify(gt, times(callsCount)).getRateLimit();
+        verify(gt, never()).getRateLimit(); // The rate limit comes from response headers
     }
 }
@@ -3,12 +3,15 @@ package org.jenkinsci.plugins.ghprc;
 import hudson.model.FreeStyleProject;
 import hudson.plugins.git.GitSCM;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
@@ -23,6 +26,7 @@ import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GHUser;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -35,6 +39,7 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -65,7 +70,8 @@ public class GhprcRootActionTest {
     @Mock
     private StaplerRequest req;
 
-    private BufferedReader br;
+    @Mock
+    private StaplerResponse resp;
 
     @Before
     public void setup() throws Exception {
@@ -113,17 +119,17 @@ public class GhprcRootActionTest {
 
 		doReturn(gitHub).when(trigger).getGitHub();
 
-        BufferedReader br = new BufferedReader(new StringReader(
-                "payload=" + URLEncoder.encode(GhprcTestUtil.PAYLOAD, "UTF-8")));
+        ServletInputStream is = toServletInputStream("payload=" + URLEncoder.encode(GhprcTestUtil.PAYLOAD, "UTF-8"));
 
         given(req.getContentType()).willReturn("application/x-www-form-urlencoded");
         given(req.getParameter("payload")).willReturn(GhprcTestUtil.PAYLOAD);
         given(req.getHeader("X-GitHub-Event")).willReturn("issue_comment");
-        given(req.getReader()).willReturn(br);
+        given(req.getInputStream()).willReturn(is);
         given(req.getCharacterEncoding()).willReturn("UTF-8");
 
         GhprcRootAction ra = new GhprcRootAction();
         ra.doIndex(req, null);
+        GhprcWebHookQueue.get().waitUntilIdle(10000);
         GhprcTestUtil.waitForBuildsToFinish(project);
 
         assertThat(project.getBuilds().toArray().length).isEqualTo(2);
@@ -155,17 +161,17 @@ public class GhprcRootActionTest {
 
 		doReturn(gitHub).when(trigger).getGitHub();
 
-        BufferedReader br = new BufferedReader(new StringReader(
-                "payload=" + URLEncoder.encode(GhprcTestUtil.PAYLOAD, "UTF-8")));
+        ServletInputStream is = toServletInputStream("payload=" + URLEncoder.encode(GhprcTestUtil.PAYLOAD, "UTF-8"));
 
         given(req.getContentType()).willReturn("application/x-www-form-urlencoded");
         given(req.getParameter("payload")).willReturn(GhprcTestUtil.PAYLOAD);
         given(req.getHeader("X-GitHub-Event")).willReturn("issue_comment");
-        given(req.getReader()).willReturn(br);
+        given(req.getInputStream()).willReturn(is);
         given(req.getCharacterEncoding()).willReturn("UTF-8");
 
         GhprcRootAction ra = new GhprcRootAction();
         ra.doIndex(req, null);
+        GhprcWebHookQueue.get().waitUntilIdle(10000);
         GhprcTestUtil.waitForBuildsToFinish(project);
         
         assertThat(project.getBuilds().toArray().length).isEqualTo(1);
@@ -176,17 +182,70 @@ public class GhprcRootActionTest {
         given(req.getContentType()).willReturn("application/json");
         given(req.getHeader("X-GitHub-Event")).willReturn("issue_comment");
 
-        // convert String into InputStream
-        InputStream is = new ByteArrayInputStream(GhprcTestUtil.PAYLOAD.getBytes());
-        // read it with BufferedReader
-        br = spy(new BufferedReader(new InputStreamReader(is)));
+        ServletInputStream is = spy(toServletInputStream(GhprcTestUtil.PAYLOAD));
 
-        given(req.getReader()).willReturn(br);
+        given(req.getInputStream()).willReturn(is);
 
         GhprcRootAction ra = new GhprcRootAction();
         ra.doIndex(req, null);
 
-        verify(br, times(1)).close();
+        verify(is, times(1)).close();
+    }
+
+    @Test
+    public void testUnsignedDeliveryIsNotQueued() throws Exception {
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject("testUnsignedDeliveryIsNotQueued");
+        GhprcTrigger trigger = spy(GhprcTestUtil.getTrigger(null));
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("secret", "secret");
+        GhprcTestUtil.setupGhprcTriggerDescriptor(config);
+        project.addProperty(new GithubProjectProperty("https://github.com/user/dropwizard"));
+        Ghprc ghprc = spy(trigger.createGhprc(project));
+        doReturn(ghprcGitHub).when(ghprc).getGitHub();
+        trigger.start(project, true);
+        trigger.setHelper(ghprc);
+        project.addTrigger(trigger);
+        long accepted = GhprcWebHookQueue.get().getAccepted();
+
+        given(req.getContentType()).willReturn("application/json");
+        given(req.getHeader("X-GitHub-Event")).willReturn("issue_comment");
+        given(req.getInputStream()).willReturn(toServletInputStream(GhprcTestUtil.PAYLOAD));
+
+        GhprcRootAction ra = new GhprcRootAction();
+        ra.doIndex(req, resp);
+
+        verify(resp).setStatus(HttpServletResponse.SC_FORBIDDEN);
+        assertThat(GhprcWebHookQueue.get().getAccepted()).isEqualTo(accepted);
+    }
+
+    @Test
+    public void testPayloadTooLarge() throws Exception {
+        given(req.getContentType()).willReturn("application/json");
+        given(req.getHeader("X-GitHub-Event")).willReturn("issue_comment");
+        given(req.getContentLength()).willReturn(Integer.MAX_VALUE);
+
+        GhprcRootAction ra = new GhprcRootAction();
+        ra.doIndex(req, resp);
+
+        verify(resp).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(req, never()).getInputStream();
+    }
+
+    @Test
+    public void testUrlDecode() throws Exception {
+        byte[] body = "payload=%7B%22a%22%3A+1%7D&other=x".getBytes("UTF-8");
+
+        assertThat(new String(GhprcRootAction.urlDecode(body, 8), "UTF-8")).isEqualTo("{\"a\": 1}");
+    }
+
+    private static ServletInputStream toServletInputStream(String content) throws Exception {
+        final InputStream is = new ByteArrayInputStream(content.getBytes("UTF-8"));
+        return new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return is.read();
+            }
+        };
     }
 
 }
@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.ghprc;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link GhprcSignatureVerifier}.
+ */
+public class GhprcSignatureVerifierTest {
+
+    private final byte[] body = GhprcTestUtil.PAYLOAD.getBytes();
+
+    @Test
+    public void testSha1Signature() throws Exception {
+        GhprcSignatureVerifier verifier = new GhprcSignatureVerifier(body, "sha1=" + sign("HmacSHA1", "123"), null);
+
+        assertThat(verifier.verify("123")).isTrue();
+        assertThat(verifier.verify("abc")).isFalse();
+        // answered from the per delivery results
+        assertThat(verifier.verify("123")).isTrue();
+    }
+
+    @Test
+    public void testSha256SignatureIsPreferred() throws Exception {
+        GhprcSignatureVerifier verifier = new GhprcSignatureVerifier(body,
+                "sha1=" + sign("HmacSHA1", "abc"), "sha256=" + sign("HmacSHA256", "123"));
+
+        assertThat(verifier.verify("123")).isTrue();
+        assertThat(verifier.verify("abc")).isFalse();
+    }
+
+    @Test
+    public void testRotatedSecret() throws Exception {
+        // the Mac of this thread is re-initialized with each new secret
+        assertThat(new GhprcSignatureVerifier(body, "sha1=" + sign("HmacSHA1", "old"), null).verify("old")).isTrue();
+        assertThat(new GhprcSignatureVerifier(body, "sha1=" + sign("HmacSHA1", "new"), null).verify("new")).isTrue();
+        assertThat(new GhprcSignatureVerifier(body, "sha1=" + sign("HmacSHA1", "new"), null).verify("old")).isFalse();
+    }
+
+    @Test
+    public void testMissingOrMalformedSignature() throws Exception {
+        assertThat(new GhprcSignatureVerifier(body, null, null).verify("123")).isFalse();
+        assertThat(new GhprcSignatureVerifier(body, "sha1=nothex", null).verify("123")).isFalse();
+        assertThat(new GhprcSignatureVerifier(body, null, null).verify(null)).isTrue();
+    }
+
+    private String sign(String algorithm, String secret) throws Exception {
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), algorithm));
+        return Hex.encodeHexString(mac.doFinal(body));
+    }
+}
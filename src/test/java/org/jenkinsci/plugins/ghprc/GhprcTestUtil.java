@@ -21,6 +21,7 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.joda.time.DateTime;
 import org.kohsuke.github.GHCommitPointer;
@@ -275,6 +276,29 @@ public class GhprcTestUtil {
         return credentialsId;
     }
 
+    /**
+     * Replaces the background commit status publisher by one posting only when {@link #flushCommitStatuses()}
+     * is called, so tests can verify the posts without waiting.
+     */
+    public static void useSynchronousCommitStatuses() {
+        GhprcCommitStatusPublisher.setInstance(new GhprcCommitStatusPublisher(Mockito.mock(ScheduledExecutorService.class)));
+    }
+
+    public static void flushCommitStatuses() {
+        GhprcCommitStatusPublisher.get().flush();
+    }
+
+    /**
+     * Posts the queued commit statuses as the last retry, so a failure isn't retried anymore.
+     */
+    public static void flushCommitStatusesOnLastAttempt() {
+        GhprcCommitStatusPublisher.get().flush(GhprcCommitStatusPublisher.RETRY_DELAYS.length);
+    }
+
+    public static void useBackgroundCommitStatuses() {
+        GhprcCommitStatusPublisher.setInstance(null);
+    }
+
     public static void setupGhprcTriggerDescriptor(Map<String, Object> config) throws Exception {
         setupReq();
         if (config == null) {
@@ -298,7 +322,7 @@ public class GhprcTestUtil {
         JSONObject githubAuth = new JSONObject();
         githubAuth.put("credentialsId", getCredentialsId());
         githubAuth.put("serverAPIUrl", apiUrl);
-        githubAuth.put("secret", null);
+        githubAuth.put("secret", config.remove("secret"));
         
         jsonObject.put("githubAuth", githubAuth);
         
@@ -0,0 +1,53 @@
+package org.jenkinsci.plugins.ghprc;
+
+import hudson.model.FreeStyleProject;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests that the stored pull requests follow their job, see {@link GhprcTriggerRegistry.GhprcTriggerRegistryItemListener}.
+ */
+public class GhprcTriggerRegistryItemListenerTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void testRenamedJobKeepsPullRequests() throws Exception {
+        // GIVEN
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject("before");
+        GhprcTrigger.DescriptorImpl descriptor = GhprcTrigger.getDscp();
+        ConcurrentMap<Integer, GhprcPullRequest> pulls = descriptor.getPullRequests("before");
+        GhprcPollState pollState = descriptor.getPollState("before");
+        pollState.update("\"etag\"", null, null);
+
+        // WHEN
+        project.renameTo("after");
+
+        // THEN
+        assertThat(descriptor.getPullRequests("after")).isSameAs(pulls);
+        assertThat(descriptor.getPollState("after")).isSameAs(pollState);
+        assertThat(descriptor.getPollState("before")).isNotSameAs(pollState);
+    }
+
+    @Test
+    public void testDeletedJobDropsPullRequests() throws Exception {
+        // GIVEN
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject("deleted");
+        GhprcTrigger.DescriptorImpl descriptor = GhprcTrigger.getDscp();
+        descriptor.getPollState("deleted").update("\"etag\"", null, null);
+        descriptor.flushPullRequests("deleted");
+
+        // WHEN
+        project.delete();
+
+        // THEN
+        assertThat(descriptor.getPollState("deleted").getEtag()).isNull();
+    }
+}
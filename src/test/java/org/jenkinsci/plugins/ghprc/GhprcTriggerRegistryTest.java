@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.ghprc;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link GhprcTriggerRegistry}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class GhprcTriggerRegistryTest {
+
+    @Mock
+    private GhprcTrigger trigger;
+    @Mock
+    private GhprcTrigger otherTrigger;
+
+    @After
+    public void tearDown() {
+        GhprcTriggerRegistry.unregister(trigger);
+        GhprcTriggerRegistry.unregister(otherTrigger);
+    }
+
+    @Test
+    public void testLookupIgnoresCase() {
+        GhprcTriggerRegistry.register(trigger, "User/Dropwizard");
+
+        assertThat(GhprcTriggerRegistry.getTriggers("user/dropwizard")).containsOnly(trigger);
+        assertThat(GhprcTriggerRegistry.getTriggers("user/other")).isEmpty();
+        assertThat(GhprcTriggerRegistry.getTriggers(null)).isEmpty();
+    }
+
+    @Test
+    public void testReRegisterMovesTrigger() {
+        GhprcTriggerRegistry.register(trigger, "user/dropwizard");
+        GhprcTriggerRegistry.register(otherTrigger, "user/dropwizard");
+        GhprcTriggerRegistry.register(trigger, "user/other");
+
+        assertThat(GhprcTriggerRegistry.getTriggers("user/dropwizard")).containsOnly(otherTrigger);
+        assertThat(GhprcTriggerRegistry.getTriggers("user/other")).containsOnly(trigger);
+    }
+
+    @Test
+    public void testUnregister() {
+        GhprcTriggerRegistry.register(trigger, "user/dropwizard");
+        GhprcTriggerRegistry.unregister(trigger);
+
+        assertThat(GhprcTriggerRegistry.getTriggers("user/dropwizard")).isEmpty();
+    }
+}
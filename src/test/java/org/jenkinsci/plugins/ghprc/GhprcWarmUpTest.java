@@ -0,0 +1,21 @@
+package org.jenkinsci.plugins.ghprc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link GhprcWarmUp}.
+ */
+public class GhprcWarmUpTest {
+
+    @Test
+    public void testSlotsAreSpacedByRate() {
+        long now = System.currentTimeMillis() + 3600000L;
+
+        assertThat(GhprcWarmUp.reserveSlot(now, 120)).isEqualTo(0);
+        assertThat(GhprcWarmUp.reserveSlot(now, 120)).isEqualTo(500);
+        assertThat(GhprcWarmUp.reserveSlot(now, 120)).isEqualTo(1000);
+        assertThat(GhprcWarmUp.reserveSlot(now + 10000, 120)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.ghprc;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link GhprcWebHookEvent}.
+ */
+public class GhprcWebHookEventTest {
+
+    @Test
+    public void testParseIssueComment() throws IOException {
+        GhprcWebHookEvent event = GhprcWebHookEvent.parse("issue_comment", GhprcTestUtil.PAYLOAD.getBytes("UTF-8"));
+
+        assertThat(event.getEvent()).isEqualTo("issue_comment");
+        assertThat(event.getRepoName()).isEqualTo("user/dropwizard");
+        assertThat(event.getAction()).isEqualTo("created");
+        assertThat(event.getNumber()).isEqualTo(1);
+        assertThat(event.getHeadSha()).isNull();
+    }
+
+    @Test
+    public void testParsePullRequest() throws IOException {
+        String payload = "{\"action\": \"synchronize\", \"number\": 7,"
+                + " \"pull_request\": {\"number\": 7, \"state\": \"open\", \"updated_at\": \"2015-05-05T23:40:27Z\","
+                + " \"head\": {\"sha\": \"abc123\"}, \"base\": {\"ref\": \"master\", \"sha\": \"def456\"}},"
+                + " \"repository\": {\"full_name\": \"User/Dropwizard\"}}";
+
+        GhprcWebHookEvent event = GhprcWebHookEvent.parse("pull_request", payload.getBytes("UTF-8"));
+
+        assertThat(event.getRepoName()).isEqualTo("User/Dropwizard");
+        assertThat(event.getAction()).isEqualTo("synchronize");
+        assertThat(event.getNumber()).isEqualTo(7);
+        assertThat(event.getHeadSha()).isEqualTo("abc123");
+        assertThat(event.getIssueState()).isEqualTo("open");
+        assertThat(event.getUpdatedAt().getTime()).isEqualTo(1430869227000L);
+        // the base sha may be behind the branch, it isn't reported as its head
+        assertThat(event.getBranch()).isNull();
+        assertThat(event.getBranchSha()).isNull();
+    }
+
+    @Test
+    public void testParsePush() throws IOException {
+        String payload = "{\"ref\": \"refs/heads/release/1.x\", \"before\": \"abc123\", \"after\": \"def456\", \"deleted\": false,"
+                + " \"repository\": {\"full_name\": \"User/Dropwizard\"}}";
+
+        GhprcWebHookEvent event = GhprcWebHookEvent.parse("push", payload.getBytes("UTF-8"));
+
+        assertThat(event.getEvent()).isEqualTo("push");
+        assertThat(event.getRepoName()).isEqualTo("User/Dropwizard");
+        assertThat(event.getBranch()).isEqualTo("release/1.x");
+        assertThat(event.getBranchSha()).isEqualTo("def456");
+        assertThat(event.getNumber()).isEqualTo(0);
+    }
+
+    @Test
+    public void testParseBranchDeletion() throws IOException {
+        String payload = "{\"ref\": \"refs/heads/topic\", \"before\": \"abc123\","
+                + " \"after\": \"0000000000000000000000000000000000000000\", \"deleted\": true,"
+                + " \"repository\": {\"full_name\": \"User/Dropwizard\"}}";
+
+        GhprcWebHookEvent event = GhprcWebHookEvent.parse("push", payload.getBytes("UTF-8"));
+
+        assertThat(event.getBranch()).isEqualTo("topic");
+        assertThat(event.getBranchSha()).isNull();
+    }
+
+    @Test
+    public void testTagPushHasNoBranch() throws IOException {
+        String payload = "{\"ref\": \"refs/tags/v1.0\", \"after\": \"abc123\", \"repository\": {\"full_name\": \"User/Dropwizard\"}}";
+
+        GhprcWebHookEvent event = GhprcWebHookEvent.parse("push", payload.getBytes("UTF-8"));
+
+        assertThat(event.getBranch()).isNull();
+    }
+}
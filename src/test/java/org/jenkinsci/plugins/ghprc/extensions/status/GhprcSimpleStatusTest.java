@@ -1,17 +1,31 @@
 package org.jenkinsci.plugins.ghprc.extensions.status;
 
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import java.io.FileNotFoundException;
+
 import org.jenkinsci.plugins.ghprc.GhprcPullRequest;
+import org.jenkinsci.plugins.ghprc.GhprcRepository;
+import org.jenkinsci.plugins.ghprc.GhprcTestUtil;
 import org.jenkinsci.plugins.ghprc.GhprcTrigger;
+import org.jenkinsci.plugins.ghprc.extensions.GhprcCommitStatusException;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.kohsuke.github.GHCommitState;
 import org.kohsuke.github.GHRepository;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.BDDMockito.given;
@@ -25,6 +39,18 @@ public class GhprcSimpleStatusTest {
     private GhprcPullRequest ghprcPullRequest;
     @Mock
     private GhprcTrigger trigger;
+    @Mock
+    private GhprcRepository repository;
+
+    @Before
+    public void setUp() {
+        GhprcTestUtil.useSynchronousCommitStatuses();
+    }
+
+    @After
+    public void tearDown() {
+        GhprcTestUtil.useBackgroundCommitStatuses();
+    }
     
     @Test
     public void testMergedMessage() throws Exception {
@@ -34,12 +60,15 @@ public class GhprcSimpleStatusTest {
 
         GhprcSimpleStatus status = spy(new GhprcSimpleStatus("default"));
         status.onBuildTriggered(trigger, ghprcPullRequest, ghRepository);
+        GhprcTestUtil.flushCommitStatuses();
         
         verify(ghRepository).createCommitStatus(eq("sha"), eq(GHCommitState.PENDING), isNull(String.class), eq(mergedMessage), eq("default"));
+        verify(ghRepository).getFullName();
         verifyNoMoreInteractions(ghRepository);
 
         verify(ghprcPullRequest).getHead();
         verify(ghprcPullRequest).isMergeable();
+        verify(ghprcPullRequest).getId();
         verifyNoMoreInteractions(ghprcPullRequest);
     }
     
@@ -51,15 +80,36 @@ public class GhprcSimpleStatusTest {
 
         GhprcSimpleStatus status = spy(new GhprcSimpleStatus("default"));
         status.onBuildTriggered(trigger, ghprcPullRequest, ghRepository);
+        GhprcTestUtil.flushCommitStatuses();
         
         verify(ghRepository).createCommitStatus(eq("sha"), eq(GHCommitState.PENDING), isNull(String.class), eq(mergedMessage), eq("default"));
+        verify(ghRepository).getFullName();
         verifyNoMoreInteractions(ghRepository);
 
         verify(ghprcPullRequest).getHead();
         verify(ghprcPullRequest).isMergeable();
+        verify(ghprcPullRequest).getId();
         verifyNoMoreInteractions(ghprcPullRequest);
     }
     
+    @Test
+    public void testFailureReportedWhenRetriesRunOut() throws Exception {
+        given(ghprcPullRequest.getHead()).willReturn("sha");
+        given(ghprcPullRequest.getId()).willReturn(3);
+        given(trigger.getRepository()).willReturn(repository);
+        given(ghRepository.createCommitStatus(anyString(), any(GHCommitState.class), anyString(), anyString(), anyString()))
+                .willThrow(new FileNotFoundException());
+
+        GhprcSimpleStatus status = new GhprcSimpleStatus("default");
+        status.onBuildTriggered(trigger, ghprcPullRequest, ghRepository);
+        GhprcTestUtil.flushCommitStatusesOnLastAttempt();
+
+        ArgumentCaptor<GhprcCommitStatusException> failure = ArgumentCaptor.forClass(GhprcCommitStatusException.class);
+        verify(repository).commentOnFailure(isNull(AbstractBuild.class), isNull(TaskListener.class), failure.capture());
+        assertThat(failure.getValue().getState()).isEqualTo(GHCommitState.PENDING);
+        assertThat(failure.getValue().getId()).isEqualTo(3);
+    }
+
     @Test
     public void testDoesNotSendEmptyContext() throws Exception {
         String mergedMessage = "Build triggered. sha1 is original commit.";
@@ -68,12 +118,15 @@ public class GhprcSimpleStatusTest {
 
         GhprcSimpleStatus status = spy(new GhprcSimpleStatus(""));
         status.onBuildTriggered(trigger, ghprcPullRequest, ghRepository);
+        GhprcTestUtil.flushCommitStatuses();
         
         verify(ghRepository).createCommitStatus(eq("sha"), eq(GHCommitState.PENDING), isNull(String.class), eq(mergedMessage), isNull(String.class));
+        verify(ghRepository).getFullName();
         verifyNoMoreInteractions(ghRepository);
 
         verify(ghprcPullRequest).getHead();
         verify(ghprcPullRequest).isMergeable();
+        verify(ghprcPullRequest).getId();
         verifyNoMoreInteractions(ghprcPullRequest);
     }
 }